@@ -0,0 +1,270 @@
+package server;
+
+import java.net.InetAddress;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Classe AdmissionControl qui représente le contrôle d'admission du serveur, appliqué avant le traitement de
+ * chaque connexion et de chaque requête.
+ * Trois limites protègent le serveur contre les clients qui envoient des requêtes en boucle :
+ * un débit par adresse IP (connexions et requêtes), un débit de demandes d'inscription par matricule et un nombre
+ * maximal de requêtes traitées en même temps par tout le serveur. Une requête qui dépasse une limite est refusée
+ * immédiatement, avec un délai conseillé avant de réessayer, plutôt que d'attendre dans une file sans limite.
+ * Aucune limite ne prend de verrou : chaque seau à jetons est un seul AtomicLong mis à jour par compareAndSet, et
+ * les seaux sont rangés dans une ConcurrentHashMap, dont les lectures ne bloquent pas.
+ */
+public final class AdmissionControl {
+
+    /**
+     * Nombre de requêtes par seconde accordées à une adresse IP. Il reste généreux, car plusieurs étudiants
+     * peuvent partager l'adresse d'un même réseau.
+     */
+    public final static double DEFAULT_ADDRESS_RATE = 50;
+
+    /**
+     * Nombre de requêtes qu'une adresse IP peut envoyer d'un coup, après une période d'inactivité.
+     */
+    public final static int DEFAULT_ADDRESS_BURST = 200;
+
+    /**
+     * Nombre de demandes d'inscription par seconde accordées à un matricule.
+     */
+    public final static double DEFAULT_MATRICULE_RATE = 1;
+
+    /**
+     * Nombre de demandes d'inscription qu'un matricule peut envoyer d'un coup.
+     */
+    public final static int DEFAULT_MATRICULE_BURST = 5;
+
+    /**
+     * Nombre maximal de requêtes traitées en même temps par le serveur.
+     */
+    public final static int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    /**
+     * Délai conseillé, en millisecondes, avant de réessayer une requête refusée parce que le serveur est saturé.
+     */
+    public final static int OVERLOAD_RETRY_AFTER = 500;
+
+    /**
+     * Message envoyé au client dont la requête est refusée.
+     */
+    public final static String RETRY_MESSAGE = "Erreur: le serveur est très sollicité, réessayez plus tard.";
+
+    private final RateLimiter addresses;
+    private final RateLimiter matricules;
+    private final int maxInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejectedConnections = new AtomicLong();
+    private final AtomicLong rejectedByAddress = new AtomicLong();
+    private final AtomicLong rejectedByMatricule = new AtomicLong();
+    private final AtomicLong rejectedByLoad = new AtomicLong();
+
+    /**
+     * Constructeur de la classe AdmissionControl, avec les limites par défaut.
+     */
+    public AdmissionControl() {
+        this(DEFAULT_ADDRESS_RATE, DEFAULT_ADDRESS_BURST, DEFAULT_MATRICULE_RATE, DEFAULT_MATRICULE_BURST,
+                DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Constructeur de la classe AdmissionControl.
+     * @param addressRate Le nombre de requêtes par seconde d'une adresse IP, ou 0 pour ne pas limiter les adresses.
+     * @param addressBurst Le nombre de requêtes qu'une adresse IP peut envoyer d'un coup.
+     * @param matriculeRate Le nombre d'inscriptions par seconde d'un matricule, ou 0 pour ne pas les limiter.
+     * @param matriculeBurst Le nombre d'inscriptions qu'un matricule peut envoyer d'un coup.
+     * @param maxInFlight Le nombre maximal de requêtes traitées en même temps.
+     */
+    public AdmissionControl(double addressRate, int addressBurst, double matriculeRate, int matriculeBurst,
+                            int maxInFlight) {
+        this.addresses = new RateLimiter(addressRate, addressBurst);
+        this.matricules = new RateLimiter(matriculeRate, matriculeBurst);
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Crée un contrôle d'admission qui accepte tout, par exemple pour un test de charge local.
+     * @return Le contrôle d'admission sans limite.
+     */
+    public static AdmissionControl unlimited() {
+        return new AdmissionControl(0, 0, 0, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Décide si une nouvelle connexion est acceptée. Elle coûte un jeton à son adresse IP.
+     * @param address L'adresse du client.
+     * @return true si la connexion est acceptée, false si elle doit être fermée.
+     */
+    public boolean admitConnection(InetAddress address) {
+        if (address != null && addresses.tryAcquire(address.getHostAddress()) > 0) {
+            rejectedConnections.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Décide si une requête est traitée. Une requête acceptée coûte un jeton à son adresse IP et occupe une place
+     * parmi les requêtes en cours, que l'appelant doit rendre avec release() à la fin du traitement.
+     * @param address L'adresse du client, ou null si elle n'est pas connue.
+     * @return 0 si la requête est acceptée, sinon le délai conseillé avant de réessayer, en millisecondes.
+     */
+    public int admitRequest(InetAddress address) {
+        if (address != null) {
+            long wait = addresses.tryAcquire(address.getHostAddress());
+            if (wait > 0) {
+                rejectedByAddress.incrementAndGet();
+                return toMillis(wait);
+            }
+        }
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            rejectedByLoad.incrementAndGet();
+            return OVERLOAD_RETRY_AFTER;
+        }
+        return 0;
+    }
+
+    /**
+     * Rend la place d'une requête acceptée par admitRequest(), une fois son traitement terminé.
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Décide si une demande d'inscription d'un matricule est traitée. Elle coûte un jeton au matricule.
+     * @param matricule Le matricule de l'étudiant.
+     * @return 0 si la demande est acceptée, sinon le délai conseillé avant de réessayer, en millisecondes.
+     */
+    public int admitMatricule(String matricule) {
+        long wait = matricules.tryAcquire(matricule);
+        if (wait > 0) {
+            rejectedByMatricule.incrementAndGet();
+            return toMillis(wait);
+        }
+        return 0;
+    }
+
+    /**
+     * Obtient le nombre de requêtes en cours de traitement.
+     * @return Le nombre de requêtes en cours.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Obtient le nombre de connexions et de requêtes refusées, par raison du refus.
+     * @return Le nombre de refus par raison : connexion, adresse, matricule et charge.
+     */
+    public Map<String, Long> getRejected() {
+        Map<String, Long> rejected = new TreeMap<>();
+        rejected.put("connexion", rejectedConnections.get());
+        rejected.put("adresse", rejectedByAddress.get());
+        rejected.put("matricule", rejectedByMatricule.get());
+        rejected.put("charge", rejectedByLoad.get());
+        return rejected;
+    }
+
+    /**
+     * Résume l'état du contrôle d'admission sur une ligne.
+     * @return Le résumé de l'état.
+     */
+    @Override
+    public String toString() {
+        return "en_cours=" + getInFlight() + " refus=" + getRejected();
+    }
+
+    private static int toMillis(long nanos) {
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMillis(nanos) + 1));
+    }
+
+    /**
+     * Seaux à jetons, un par clé (adresse IP ou matricule).
+     * Chaque seau est représenté par un seul instant : celui où il serait de nouveau plein. Prendre un jeton
+     * repousse cet instant d'un intervalle; la demande est refusée si l'instant dépasse le présent de plus que la
+     * capacité du seau. Un seau dont l'instant est passé est plein, et peut être retiré sans rien changer : les
+     * seaux inactifs sont oubliés lorsque leur nombre dépasse MAX_TRACKED.
+     */
+    static final class RateLimiter {
+
+        /**
+         * Nombre de clés suivies au-delà duquel les seaux pleins sont retirés.
+         */
+        final static int MAX_TRACKED = 65536;
+
+        private final long interval;
+        private final long capacity;
+        private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+        private final AtomicBoolean purging = new AtomicBoolean();
+
+        RateLimiter(double rate, int burst) {
+            this.interval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+            this.capacity = interval * Math.max(1, burst);
+        }
+
+        /**
+         * Prend un jeton dans le seau d'une clé.
+         * @return 0 si un jeton a été pris, sinon le délai avant qu'un jeton soit disponible, en nanosecondes.
+         */
+        long tryAcquire(String key) {
+            if (interval == 0) {
+                return 0;
+            }
+            long now = System.nanoTime();
+            AtomicLong full = buckets.get(key);
+            if (full == null) {
+                full = track(key, now);
+                if (full == null) {
+                    // Trop de clés actives : la limite globale des requêtes en cours protège encore le serveur
+                    return 0;
+                }
+            }
+            while (true) {
+                long current = full.get();
+                long next = (current - now > 0 ? current : now) + interval;
+                long excess = next - now - capacity;
+                if (excess > 0) {
+                    return excess;
+                }
+                if (full.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        private AtomicLong track(String key, long now) {
+            if (buckets.size() >= MAX_TRACKED) {
+                purge(now);
+                if (buckets.size() >= MAX_TRACKED) {
+                    return null;
+                }
+            }
+            AtomicLong created = new AtomicLong(now);
+            AtomicLong existing = buckets.putIfAbsent(key, created);
+            return existing != null ? existing : created;
+        }
+
+        /**
+         * Retire les seaux pleins. Un seul thread les retire à la fois; les autres continuent sans attendre.
+         */
+        private void purge(long now) {
+            if (!purging.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                buckets.values().removeIf(full -> full.get() - now <= 0);
+            } finally {
+                purging.set(false);
+            }
+        }
+    }
+}
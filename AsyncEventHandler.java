@@ -0,0 +1,135 @@
+package server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Classe AsyncEventHandler qui représente un EventHandler appelé hors du thread de la connexion.
+ * Chaque événement est déposé dans une file bornée propre au handler et traité, dans l'ordre, par un thread
+ * dédié : un handler lent (audit, notification, analyse...) ne retarde donc ni la réponse au client ni les autres
+ * handlers. Lorsque la file est pleine, l'événement est perdu et compté plutôt que de bloquer la connexion.
+ * Le retard de chaque événement, entre son dépôt et le début de son traitement, est mesuré.
+ */
+public final class AsyncEventHandler implements EventHandler {
+
+    /**
+     * Nombre d'événements en attente par défaut.
+     */
+    public final static int DEFAULT_CAPACITY = 1024;
+
+    private final String name;
+    private final EventHandler handler;
+    private final ThreadPoolExecutor executor;
+    private final LatencyHistogram lag = new LatencyHistogram();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Constructeur de la classe AsyncEventHandler.
+     * @param name Le nom du handler, utilisé pour son thread et ses mesures.
+     * @param handler L'EventHandler appelé pour chaque événement.
+     * @param capacity Le nombre maximal d'événements en attente.
+     */
+    public AsyncEventHandler(String name, EventHandler handler, int capacity) {
+        this.name = name;
+        this.handler = handler;
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity),
+                r -> {
+                    Thread t = new Thread(r, "handler-" + name);
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * Dépose un événement dans la file du handler, sans attendre son traitement.
+     * @param cmd La commande à traiter.
+     * @param arg L'argument associé à la commande.
+     */
+    @Override
+    public void handle(String cmd, String arg) {
+        long enqueued = System.nanoTime();
+        try {
+            executor.execute(() -> dispatch(cmd, arg, enqueued));
+        } catch (RejectedExecutionException e) {
+            // File pleine ou handler arrêté : la connexion n'attend pas
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void dispatch(String cmd, String arg, long enqueued) {
+        lag.record(System.nanoTime() - enqueued);
+        try {
+            handler.handle(cmd, arg);
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            ServerLog.get().error("Erreur dans le handler " + name + " pour la commande " + cmd, e);
+        }
+    }
+
+    /**
+     * Obtient le nom du handler.
+     * @return Le nom du handler.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Obtient l'histogramme du retard des événements, entre leur dépôt et le début de leur traitement.
+     * @return L'histogramme du retard, en nanosecondes.
+     */
+    public LatencyHistogram getLag() {
+        return lag;
+    }
+
+    /**
+     * Obtient le nombre d'événements en attente de traitement.
+     * @return Le nombre d'événements en attente.
+     */
+    public int getPending() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Obtient le nombre d'événements perdus parce que la file était pleine.
+     * @return Le nombre d'événements perdus.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Obtient le nombre d'événements dont le traitement a levé une exception.
+     * @return Le nombre d'événements en erreur.
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Arrête le handler après le traitement des événements en attente, au plus pendant le délai spécifié.
+     * @param timeout Le délai maximal d'attente.
+     * @param unit L'unité du délai.
+     * @throws InterruptedException Si le thread est interrompu pendant l'attente.
+     */
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(timeout, unit)) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Résume les mesures du handler sur une ligne.
+     * @return Le résumé des mesures.
+     */
+    @Override
+    public String toString() {
+        return "attente=" + getPending() + " perdus=" + getDropped() + " erreurs=" + getFailed() + " retard: " + lag;
+    }
+}
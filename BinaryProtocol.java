@@ -0,0 +1,791 @@
+package server;
+
+import server.models.Course;
+import server.models.RegistrationForm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ProtocolException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Classe BinaryProtocol qui décrit le protocole binaire échangé entre les clients et le serveur.
+ * Le client ouvre la connexion avec une poignée de main (MAGIC suivi de VERSION), à laquelle le serveur répond
+ * de la même façon. Chaque message est ensuite une trame : sa longueur (int), son type (octet), l'identifiant
+ * de sa requête (int) et son contenu. Une connexion reste ouverte pour plusieurs requêtes, et le client peut
+ * envoyer plusieurs requêtes sans attendre les réponses : chaque réponse porte l'identifiant de sa requête.
+ * Les cours et les formulaires d'inscription sont encodés champ par champ, sans descripteur de classe ni
+ * réflexion, ce qui réduit la taille des messages et le coût de leur lecture. Le serveur ne crée jamais d'objet
+ * d'une classe choisie par le client.
+ */
+public final class BinaryProtocol {
+
+    /**
+     * Octets d'ouverture d'une connexion binaire. Ils ne peuvent pas être confondus avec l'en-tête d'un flux
+     * d'objets Java (0xACED), ce qui permet au serveur de détecter le protocole utilisé par le client.
+     */
+    public final static byte[] MAGIC = {'U', 'D', 'E', 'M'};
+
+    /**
+     * Version du protocole binaire.
+     */
+    public final static int VERSION = 1;
+
+    /**
+     * Type de trame : ligne de commande (par exemple "CHARGER Automne").
+     */
+    public final static byte COMMAND = 1;
+
+    /**
+     * Type de trame : liste de cours.
+     */
+    public final static byte COURSES = 2;
+
+    /**
+     * Type de trame : formulaire d'inscription.
+     */
+    public final static byte FORM = 3;
+
+    /**
+     * Type de trame : message texte du serveur.
+     */
+    public final static byte MESSAGE = 4;
+
+    /**
+     * Type de trame : liste de formulaires d'inscription (commande INSCRIRE_LOT).
+     */
+    public final static byte FORMS = 5;
+
+    /**
+     * Type de trame : liste de messages texte du serveur, un par formulaire d'une inscription en lot.
+     */
+    public final static byte MESSAGES = 6;
+
+    /**
+     * Type de trame : page de résultats d'une recherche de cours (commande CHERCHER).
+     */
+    public final static byte COURSE_PAGE = 7;
+
+    /**
+     * Type de trame : version de la liste des cours d'une session, et si elle diffère de celle du client.
+     * Elle répond à une demande conditionnelle (voir Server.IF_NOT_VERSION) et n'est suivie de la liste que si
+     * la liste a changé.
+     */
+    public final static byte VERSION_CHECK = 8;
+
+    /**
+     * Type de trame : requête refusée par le contrôle d'admission du serveur (voir AdmissionControl), avec un
+     * message et le délai conseillé avant de réessayer. Elle peut remplacer la réponse de n'importe quelle requête;
+     * la lire comme une autre trame lève une RetryLaterException.
+     */
+    public final static byte RETRY_LATER = 9;
+
+    /**
+     * Type de trame : position d'une demande d'inscription dans la salle d'attente du serveur (voir WaitingRoom) et
+     * temps d'attente estimé. Zéro, une ou plusieurs de ces trames précèdent la réponse à INSCRIRE ou INSCRIRE_LOT.
+     */
+    public final static byte QUEUE_POSITION = 10;
+
+    /**
+     * Longueur maximale d'une trame, au-delà de laquelle la connexion est considérée invalide. Le serveur n'envoie
+     * jamais de trame plus longue : une liste de cours qui ne tient pas dans une trame COURSES est envoyée en
+     * plusieurs trames COURSE_PAGE, et une page trop longue est raccourcie (voir fittingCourses()).
+     */
+    public final static int MAX_FRAME_LENGTH = 1024 * 1024;
+
+    /**
+     * Longueur maximale d'une trame envoyée par un client : le serveur n'alloue jamais plus pour une requête, quel
+     * que soit son moteur. Avec son champ de longueur, la trame tient dans SelectorEngine.MAX_REQUEST_BYTES.
+     */
+    public final static int MAX_REQUEST_LENGTH = SelectorEngine.MAX_REQUEST_BYTES - 4;
+
+    /**
+     * Longueur de l'en-tête d'une trame : sa longueur (int), son type (octet) et l'identifiant de sa requête (int).
+     */
+    public final static int FRAME_HEADER_LENGTH = 9;
+
+    /**
+     * Longueur minimale d'un cours encodé : trois chaînes vides.
+     */
+    private final static int MIN_COURSE_LENGTH = 3 * 2;
+
+    /**
+     * Longueur minimale d'un formulaire encodé : quatre chaînes vides, suivies d'un cours.
+     */
+    private final static int MIN_FORM_LENGTH = 4 * 2 + MIN_COURSE_LENGTH;
+
+    /**
+     * Longueur minimale d'un message encodé : une chaîne vide.
+     */
+    private final static int MIN_MESSAGE_LENGTH = 2;
+
+    private BinaryProtocol() {
+    }
+
+    /**
+     * Indique si les deux premiers octets reçus sont ceux d'une connexion binaire.
+     * @param b0 Le premier octet reçu.
+     * @param b1 Le deuxième octet reçu.
+     * @return true si la connexion utilise le protocole binaire.
+     */
+    public static boolean isBinary(int b0, int b1) {
+        return b0 == MAGIC[0] && b1 == MAGIC[1];
+    }
+
+    /**
+     * Écrit la poignée de main : MAGIC suivi de VERSION.
+     * @param out Le flux de sortie de la connexion.
+     * @throws IOException En cas d'erreur lors de l'écriture.
+     */
+    public static void writeHandshake(DataOutputStream out) throws IOException {
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.flush();
+    }
+
+    /**
+     * Lit et vérifie la poignée de main de l'autre extrémité.
+     * @param in Le flux d'entrée de la connexion.
+     * @return La version annoncée.
+     * @throws IOException Si la poignée de main est invalide ou en cas d'erreur de lecture.
+     */
+    public static int readHandshake(DataInputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new ProtocolException("Poignée de main invalide");
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new ProtocolException("Version du protocole non supportée: " + version);
+        }
+        return version;
+    }
+
+    /**
+     * Encode une trame de commande.
+     * @param requestId L'identifiant de la requête, renvoyé par le serveur dans sa réponse.
+     * @param line La ligne de commande.
+     * @return Les octets de la trame.
+     */
+    public static byte[] encodeCommand(int requestId, String line) {
+        FrameWriter frame = new FrameWriter(COMMAND, requestId);
+        frame.writeUTF(line);
+        return frame.toByteArray();
+    }
+
+    /**
+     * Encode une trame contenant une liste de cours.
+     * @param requestId L'identifiant de la requête à laquelle la trame répond.
+     * @param courses Les cours à encoder.
+     * @return Les octets de la trame.
+     */
+    public static byte[] encodeCourses(int requestId, List<Course> courses) {
+        FrameWriter frame = new FrameWriter(COURSES, requestId);
+        frame.writeInt(courses.size());
+        for (Course course : courses) {
+            frame.writeCourse(course);
+        }
+        return frame.toByteArray();
+    }
+
+    /**
+     * Indique si une liste de cours tient dans une seule trame COURSES.
+     * @param courses Les cours à encoder.
+     * @return true si la trame ne dépasse pas MAX_FRAME_LENGTH.
+     */
+    public static boolean fitsInCoursesFrame(List<Course> courses) {
+        long length = FRAME_HEADER_LENGTH - 4 + 4;
+        for (Course course : courses) {
+            length += courseLength(course);
+            if (length > MAX_FRAME_LENGTH) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compte les cours, à partir d'une position, qui tiennent ensemble dans une seule trame COURSE_PAGE.
+     * Un cours encodé fait au plus trois chaînes de 64 Ko : une page en contient donc toujours au moins un.
+     * @param courses Les cours.
+     * @param from La position du premier cours de la page.
+     * @param max Le nombre maximal de cours de la page.
+     * @return Le nombre de cours de la page, au plus max.
+     */
+    public static int fittingCourses(List<Course> courses, int from, int max) {
+        long length = FRAME_HEADER_LENGTH - 4 + 12;
+        int to = (int) Math.min(courses.size(), (long) from + max);
+        for (int i = from; i < to; i++) {
+            length += courseLength(courses.get(i));
+            if (length > MAX_FRAME_LENGTH) {
+                return i - from;
+            }
+        }
+        return to - from;
+    }
+
+    /**
+     * Encode une trame contenant une page de résultats de recherche : le nombre total de résultats, la position du
+     * premier résultat de la page, puis ses cours.
+     * Si tous les cours de la page ne tiennent pas dans une trame, seuls les premiers sont encodés : la page
+     * annonce alors une suite (voir CourseIndex.Page.hasNext()), que le client demande à partir du cours qui suit.
+     * @param requestId L'identifiant de la requête à laquelle la trame répond.
+     * @param page La page de résultats.
+     * @return Les octets de la trame.
+     */
+    public static byte[] encodeCoursePage(int requestId, CourseIndex.Page page) {
+        List<Course> courses = page.getCourses();
+        int count = fittingCourses(courses, 0, courses.size());
+        FrameWriter frame = new FrameWriter(COURSE_PAGE, requestId);
+        frame.writeInt(page.getTotal());
+        frame.writeInt(page.getOffset());
+        frame.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            frame.writeCourse(courses.get(i));
+        }
+        return frame.toByteArray();
+    }
+
+    /**
+     * Encode une trame de version de la liste des cours d'une session.
+     * @param requestId L'identifiant de la requête à laquelle la trame répond.
+     * @param version La version courante de la liste.
+     * @param modified true si la liste diffère de la version du client et suit cette trame.
+     * @return Les octets de la trame.
+     */
+    public static byte[] encodeVersion(int requestId, String version, boolean modified) {
+        FrameWriter frame = new FrameWriter(VERSION_CHECK, requestId);
+        frame.writeUTF(version);
+        frame.bytes.write(modified ? 1 : 0);
+        return frame.toByteArray();
+    }
+
+    /**
+     * Encode une trame contenant un formulaire d'inscription.
+     * @param requestId L'identifiant de la requête INSCRIRE que le formulaire accompagne.
+     * @param form Le formulaire à encoder.
+     * @return Les octets de la trame.
+     */
+    public static byte[] encodeForm(int requestId, RegistrationForm form) {
+        FrameWriter frame = new FrameWriter(FORM, requestId);
+        frame.writeForm(form);
+        return frame.toByteArray();
+    }
+
+    /**
+     * Encode une trame contenant une liste de formulaires d'inscription.
+     * @param requestId L'identifiant de la requête INSCRIRE_LOT que les formulaires accompagnent.
+     * @param forms Les formulaires à encoder.
+     * @return Les octets de la trame.
+     */
+    public static byte[] encodeForms(int requestId, List<RegistrationForm> forms) {
+        FrameWriter frame = new FrameWriter(FORMS, requestId);
+        frame.writeInt(forms.size());
+        for (RegistrationForm form : forms) {
+            frame.writeForm(form);
+        }
+        return frame.toByteArray();
+    }
+
+    /**
+     * Encode une trame de message texte.
+     * @param requestId L'identifiant de la requête à laquelle la trame répond.
+     * @param message Le message.
+     * @return Les octets de la trame.
+     */
+    public static byte[] encodeMessage(int requestId, String message) {
+        FrameWriter frame = new FrameWriter(MESSAGE, requestId);
+        frame.writeUTF(message);
+        return frame.toByteArray();
+    }
+
+    /**
+     * Encode une trame de requête refusée.
+     * @param requestId L'identifiant de la requête refusée.
+     * @param message Le message destiné au client.
+     * @param retryAfter Le délai conseillé avant de réessayer, en millisecondes.
+     * @return Les octets de la trame.
+     */
+    public static byte[] encodeRetryLater(int requestId, String message, int retryAfter) {
+        FrameWriter frame = new FrameWriter(RETRY_LATER, requestId);
+        frame.writeUTF(message);
+        frame.writeInt(retryAfter);
+        return frame.toByteArray();
+    }
+
+    /**
+     * Encode une trame de position dans la salle d'attente.
+     * @param requestId L'identifiant de la requête d'inscription en attente.
+     * @param position Le nombre de demandes servies avant celle-ci.
+     * @param estimatedWait Le temps d'attente estimé, en millisecondes.
+     * @return Les octets de la trame.
+     */
+    public static byte[] encodeQueuePosition(int requestId, int position, int estimatedWait) {
+        FrameWriter frame = new FrameWriter(QUEUE_POSITION, requestId);
+        frame.writeInt(position);
+        frame.writeInt(estimatedWait);
+        return frame.toByteArray();
+    }
+
+    /**
+     * Encode une trame contenant une liste de messages texte.
+     * @param requestId L'identifiant de la requête à laquelle la trame répond.
+     * @param messages Les messages.
+     * @return Les octets de la trame.
+     */
+    public static byte[] encodeMessages(int requestId, List<String> messages) {
+        FrameWriter frame = new FrameWriter(MESSAGES, requestId);
+        frame.writeInt(messages.size());
+        for (String message : messages) {
+            frame.writeUTF(message);
+        }
+        return frame.toByteArray();
+    }
+
+    /**
+     * Écrit une trame déjà encodée en remplaçant son identifiant de requête, sans copier la trame.
+     * Cela permet de garder en cache une seule trame pour toutes les requêtes qui demandent le même contenu.
+     * @param out Le flux de sortie de la connexion.
+     * @param frame Les octets de la trame.
+     * @param requestId L'identifiant de la requête à laquelle la trame répond.
+     * @throws IOException En cas d'erreur lors de l'écriture.
+     */
+    public static void writeFrame(DataOutputStream out, byte[] frame, int requestId) throws IOException {
+        out.write(frame, 0, 5);
+        out.writeInt(requestId);
+        out.write(frame, FRAME_HEADER_LENGTH, frame.length - FRAME_HEADER_LENGTH);
+    }
+
+    /**
+     * Lit la prochaine trame envoyée par le serveur, quel que soit son type.
+     * @param in Le flux d'entrée de la connexion.
+     * @return La trame lue.
+     * @throws IOException Si la trame est invalide ou en cas d'erreur de lecture.
+     */
+    public static Frame readFrame(DataInputStream in) throws IOException {
+        return readFrame(in, MAX_FRAME_LENGTH);
+    }
+
+    /**
+     * Lit la prochaine trame, quel que soit son type. Le corps de la trame n'est alloué qu'une fois sa longueur
+     * vérifiée : une trame plus longue que maxLength est refusée avant toute allocation.
+     * @param in Le flux d'entrée de la connexion.
+     * @param maxLength La longueur maximale acceptée : MAX_REQUEST_LENGTH pour une trame d'un client,
+     * MAX_FRAME_LENGTH pour une trame du serveur.
+     * @return La trame lue.
+     * @throws IOException Si la trame est invalide ou en cas d'erreur de lecture.
+     */
+    public static Frame readFrame(DataInputStream in, int maxLength) throws IOException {
+        int length = in.readInt();
+        if (length < FRAME_HEADER_LENGTH - 4 || length > maxLength) {
+            throw new ProtocolException("Longueur de trame invalide: " + length);
+        }
+        byte type = in.readByte();
+        int requestId = in.readInt();
+        byte[] body = new byte[length - 5];
+        in.readFully(body);
+        return new Frame(type, requestId, body);
+    }
+
+    /**
+     * Lit une trame de commande.
+     * @param in Le flux d'entrée de la connexion.
+     * @return La ligne de commande.
+     * @throws IOException Si la trame est invalide ou en cas d'erreur de lecture.
+     */
+    public static String readCommand(DataInputStream in) throws IOException {
+        return readFrame(in, MAX_REQUEST_LENGTH).getCommand();
+    }
+
+    /**
+     * Lit une trame contenant une liste de cours.
+     * @param in Le flux d'entrée de la connexion.
+     * @return La liste des cours.
+     * @throws IOException Si la trame est invalide ou en cas d'erreur de lecture.
+     */
+    public static ArrayList<Course> readCourses(DataInputStream in) throws IOException {
+        return readFrame(in).getCourses();
+    }
+
+    /**
+     * Lit une trame contenant un formulaire d'inscription.
+     * @param in Le flux d'entrée de la connexion.
+     * @return Le formulaire d'inscription.
+     * @throws IOException Si la trame est invalide ou en cas d'erreur de lecture.
+     */
+    public static RegistrationForm readForm(DataInputStream in) throws IOException {
+        return readFrame(in, MAX_REQUEST_LENGTH).getForm();
+    }
+
+    /**
+     * Lit une trame contenant une liste de formulaires d'inscription.
+     * @param in Le flux d'entrée de la connexion.
+     * @return Les formulaires d'inscription.
+     * @throws IOException Si la trame est invalide ou en cas d'erreur de lecture.
+     */
+    public static ArrayList<RegistrationForm> readForms(DataInputStream in) throws IOException {
+        return readFrame(in, MAX_REQUEST_LENGTH).getForms();
+    }
+
+    /**
+     * Lit une trame de message texte.
+     * @param in Le flux d'entrée de la connexion.
+     * @return Le message.
+     * @throws IOException Si la trame est invalide ou en cas d'erreur de lecture.
+     */
+    public static String readMessage(DataInputStream in) throws IOException {
+        return readFrame(in).getMessage();
+    }
+
+    /**
+     * Lit la liste des cours en réponse à une requête CHARGER, dont la première trame est déjà lue : une trame
+     * COURSES, ou la première de plusieurs trames COURSE_PAGE si la liste ne tenait pas dans une seule trame.
+     * Les pages suivantes sont lues du flux, où elles suivent la première sans autre trame entre elles.
+     * @param first La première trame de la réponse.
+     * @param in Le flux d'entrée de la connexion.
+     * @return La liste complète des cours.
+     * @throws IOException Si une trame est invalide ou en cas d'erreur de lecture.
+     */
+    public static ArrayList<Course> readCourseList(Frame first, DataInputStream in) throws IOException {
+        if (first.getType() != COURSE_PAGE) {
+            return first.getCourses();
+        }
+        CourseIndex.Page page = first.getCoursePage();
+        ArrayList<Course> courses = new ArrayList<>(page.getCourses());
+        while (page.hasNext()) {
+            Frame next = readFrame(in);
+            if (next.getRequestId() != first.getRequestId()) {
+                throw new ProtocolException("Réponse inattendue: " + next.getRequestId());
+            }
+            page = next.getCoursePage();
+            courses.addAll(page.getCourses());
+        }
+        return courses;
+    }
+
+    /**
+     * Calcule la longueur d'une chaîne encodée par writeUTF(), sa longueur comprise.
+     */
+    private static int utfLength(String value) {
+        int length = 2;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            length += c >= 0x0001 && c <= 0x007F ? 1 : c <= 0x07FF ? 2 : 3;
+        }
+        return length;
+    }
+
+    /**
+     * Calcule la longueur d'un cours encodé dans une trame.
+     */
+    private static int courseLength(Course course) {
+        return utfLength(course.getCode()) + utfLength(course.getName()) + utfLength(course.getSession());
+    }
+
+    private static Course readCourse(DataInputStream in) throws IOException {
+        String code = in.readUTF();
+        String name = in.readUTF();
+        String session = in.readUTF();
+        return new Course(name, code, session);
+    }
+
+    private static RegistrationForm readFormFields(DataInputStream in) throws IOException {
+        String prenom = in.readUTF();
+        String nom = in.readUTF();
+        String email = in.readUTF();
+        String matricule = in.readUTF();
+        return new RegistrationForm(prenom, nom, email, matricule, readCourse(in));
+    }
+
+    /**
+     * Classe Frame qui représente une trame reçue : son type, l'identifiant de sa requête et son contenu.
+     */
+    public static final class Frame {
+        private final byte type;
+        private final int requestId;
+        private final byte[] body;
+
+        private Frame(byte type, int requestId, byte[] body) {
+            this.type = type;
+            this.requestId = requestId;
+            this.body = body;
+        }
+
+        /**
+         * Obtient le type de la trame.
+         * @return Le type de la trame.
+         */
+        public byte getType() {
+            return type;
+        }
+
+        /**
+         * Obtient l'identifiant de la requête de la trame.
+         * @return L'identifiant de la requête.
+         */
+        public int getRequestId() {
+            return requestId;
+        }
+
+        /**
+         * Décode la ligne de commande d'une trame de commande.
+         * @return La ligne de commande.
+         * @throws IOException Si la trame n'est pas une commande ou si son contenu est invalide.
+         */
+        public String getCommand() throws IOException {
+            return body(COMMAND).readUTF();
+        }
+
+        /**
+         * Décode la liste des cours d'une trame de cours.
+         * @return La liste des cours.
+         * @throws IOException Si la trame ne contient pas de cours ou si son contenu est invalide.
+         */
+        public ArrayList<Course> getCourses() throws IOException {
+            DataInputStream in = body(COURSES);
+            int count = readCount(in, MIN_COURSE_LENGTH, Integer.MAX_VALUE);
+            ArrayList<Course> courses = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                courses.add(readCourse(in));
+            }
+            return courses;
+        }
+
+        /**
+         * Décode la page de résultats d'une trame de recherche.
+         * @return La page de résultats.
+         * @throws IOException Si la trame ne contient pas de résultats ou si son contenu est invalide.
+         */
+        public CourseIndex.Page getCoursePage() throws IOException {
+            DataInputStream in = body(COURSE_PAGE);
+            int total = readNonNegative(in);
+            int offset = readNonNegative(in);
+            int count = readCount(in, MIN_COURSE_LENGTH, Integer.MAX_VALUE);
+            ArrayList<Course> courses = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                courses.add(readCourse(in));
+            }
+            return new CourseIndex.Page(total, offset, courses);
+        }
+
+        /**
+         * Décode la version d'une trame de version.
+         * @return La version courante de la liste des cours.
+         * @throws IOException Si la trame n'est pas une trame de version ou si son contenu est invalide.
+         */
+        public String getVersion() throws IOException {
+            return body(VERSION_CHECK).readUTF();
+        }
+
+        /**
+         * Indique, pour une trame de version, si la liste des cours a changé et suit cette trame.
+         * @return true si la liste des cours suit, false si la version du client est à jour.
+         * @throws IOException Si la trame n'est pas une trame de version ou si son contenu est invalide.
+         */
+        public boolean isModified() throws IOException {
+            DataInputStream in = body(VERSION_CHECK);
+            in.readUTF();
+            return in.readBoolean();
+        }
+
+        /**
+         * Indique si la trame donne la position d'une demande dans la salle d'attente plutôt que la réponse.
+         * @return true pour une trame QUEUE_POSITION.
+         */
+        public boolean isQueuePosition() {
+            return type == QUEUE_POSITION;
+        }
+
+        /**
+         * Décode la position d'une trame de position dans la salle d'attente.
+         * @return Le nombre de demandes servies avant celle du client.
+         * @throws IOException Si la trame n'est pas une trame de position ou si son contenu est invalide.
+         */
+        public int getQueuePosition() throws IOException {
+            return body(QUEUE_POSITION).readInt();
+        }
+
+        /**
+         * Décode le temps d'attente estimé d'une trame de position dans la salle d'attente.
+         * @return Le temps d'attente estimé, en millisecondes.
+         * @throws IOException Si la trame n'est pas une trame de position ou si son contenu est invalide.
+         */
+        public int getEstimatedWait() throws IOException {
+            DataInputStream in = body(QUEUE_POSITION);
+            in.readInt();
+            return in.readInt();
+        }
+
+        /**
+         * Décode le formulaire d'inscription d'une trame de formulaire.
+         * @return Le formulaire d'inscription.
+         * @throws IOException Si la trame n'est pas un formulaire ou si son contenu est invalide.
+         */
+        public RegistrationForm getForm() throws IOException {
+            return readFormFields(body(FORM));
+        }
+
+        /**
+         * Décode les formulaires d'une trame de formulaires.
+         * @return Les formulaires d'inscription.
+         * @throws IOException Si la trame ne contient pas de formulaires, si elle en annonce plus que
+         * Server.MAX_BATCH_SIZE ou si son contenu est invalide.
+         */
+        public ArrayList<RegistrationForm> getForms() throws IOException {
+            DataInputStream in = body(FORMS);
+            int count = readCount(in, MIN_FORM_LENGTH, Server.MAX_BATCH_SIZE);
+            ArrayList<RegistrationForm> forms = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                forms.add(readFormFields(in));
+            }
+            return forms;
+        }
+
+        /**
+         * Décode le texte d'une trame de message.
+         * @return Le message.
+         * @throws IOException Si la trame n'est pas un message ou si son contenu est invalide.
+         */
+        public String getMessage() throws IOException {
+            return body(MESSAGE).readUTF();
+        }
+
+        /**
+         * Décode les textes d'une trame de messages.
+         * @return Les messages, dans l'ordre des formulaires auxquels ils répondent.
+         * @throws IOException Si la trame ne contient pas de messages ou si son contenu est invalide.
+         */
+        public ArrayList<String> getMessages() throws IOException {
+            DataInputStream in = body(MESSAGES);
+            int count = readCount(in, MIN_MESSAGE_LENGTH, Integer.MAX_VALUE);
+            ArrayList<String> messages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                messages.add(in.readUTF());
+            }
+            return messages;
+        }
+
+        /**
+         * Lit le nombre d'éléments d'une liste, avant de réserver la liste. Le nombre vient de l'autre extrémité :
+         * il est borné par le nombre d'éléments que les octets restants de la trame peuvent contenir, pour qu'une
+         * trame de quelques octets ne puisse pas faire réserver une grande liste.
+         * @param minLength La longueur minimale d'un élément encodé.
+         * @param max Le nombre maximal d'éléments accepté.
+         */
+        private static int readCount(DataInputStream in, int minLength, int max) throws IOException {
+            int count = in.readInt();
+            if (count < 0 || count > max || count > in.available() / minLength) {
+                throw new ProtocolException("Nombre d'éléments invalide: " + count);
+            }
+            return count;
+        }
+
+        private static int readNonNegative(DataInputStream in) throws IOException {
+            int value = in.readInt();
+            if (value < 0) {
+                throw new ProtocolException("Valeur invalide: " + value);
+            }
+            return value;
+        }
+
+        private DataInputStream body(byte expectedType) throws IOException {
+            if (type == RETRY_LATER && expectedType != RETRY_LATER) {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+                throw new RetryLaterException(in.readUTF(), in.readInt());
+            }
+            if (type != expectedType) {
+                throw new ProtocolException("Trame de type " + type + " reçue, type " + expectedType + " attendu");
+            }
+            return new DataInputStream(new ByteArrayInputStream(body));
+        }
+    }
+
+    /**
+     * Exception levée lorsque le serveur a refusé une requête parce qu'il est trop sollicité. La connexion reste
+     * valide : la requête peut être renvoyée après le délai conseillé.
+     */
+    public static final class RetryLaterException extends IOException {
+        private final static long serialVersionUID = 1L;
+
+        private final int retryAfter;
+
+        /**
+         * Constructeur de la classe RetryLaterException.
+         * @param message Le message du serveur.
+         * @param retryAfter Le délai conseillé avant de réessayer, en millisecondes.
+         */
+        public RetryLaterException(String message, int retryAfter) {
+            super(message);
+            this.retryAfter = retryAfter;
+        }
+
+        /**
+         * Obtient le délai conseillé par le serveur avant de renvoyer la requête.
+         * @return Le délai, en millisecondes.
+         */
+        public int getRetryAfter() {
+            return retryAfter;
+        }
+    }
+
+    /**
+     * Tampon d'écriture d'une trame. La longueur est inscrite au début une fois le contenu écrit.
+     */
+    private static final class FrameWriter {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        private FrameWriter(byte type, int requestId) {
+            writeInt(0);
+            bytes.write(type);
+            writeInt(requestId);
+        }
+
+        private void writeInt(int value) {
+            try {
+                out.writeInt(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeUTF(String value) {
+            try {
+                out.writeUTF(value);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeCourse(Course course) {
+            writeUTF(course.getCode());
+            writeUTF(course.getName());
+            writeUTF(course.getSession());
+        }
+
+        private void writeForm(RegistrationForm form) {
+            writeUTF(form.getPrenom());
+            writeUTF(form.getNom());
+            writeUTF(form.getEmail());
+            writeUTF(form.getMatricule());
+            writeCourse(form.getCourse());
+        }
+
+        private byte[] toByteArray() {
+            byte[] frame = bytes.toByteArray();
+            int length = frame.length - 4;
+            frame[0] = (byte) (length >>> 24);
+            frame[1] = (byte) (length >>> 16);
+            frame[2] = (byte) (length >>> 8);
+            frame[3] = (byte) length;
+            return frame;
+        }
+    }
+}
@@ -1,225 +1,473 @@
-package client;
-
-import server.models.Course;
-import server.models.RegistrationForm;
-
-import java.io.*;
-import java.net.Socket;
-import java.util.ArrayList;
-import java.util.Scanner;
-
-/**
- * La classe Client représente le client qui se connecte au serveur pour s'inscrire à des cours.
- */
-public class Client {
-    /**
-     * Commande d'inscription.
-     */
-    public final static String REGISTER_COMMAND = "INSCRIRE";
-
-    /**
-     * Commande de chargement des cours.
-     */
-    public final static String LOAD_COMMAND = "CHARGER";
-    private static Client client;
-    private Socket socket;
-    private ObjectInputStream objectInputStream;
-    private ObjectOutputStream objectOutputStream;
-    private final Scanner scanner = new Scanner(System.in);
-    private ArrayList<Course> courses;
-    private String session;
-    private String courseName;
-
-    /**
-     * Méthode principale pour lancer le client.
-     * @param args Les arguments en ligne de commande.
-     * @throws Exception Si une exception survient lors de l'exécution du client.
-     */
-    public static void main(String[] args) throws Exception {
-        client = new Client();
-        System.out.println("*** Bienvenue au portail d'inscription de cours de l'UDEM ***");
-        client.charger();
-        client.inscription();
-        client.disconnect();
-    }
-
-    /**
-     * Établit une connexion avec le serveur.
-     */
-    public void connect() {
-        try{
-            socket = new Socket("localhost", 1337);
-            objectOutputStream = new ObjectOutputStream(socket.getOutputStream());
-            objectInputStream = new ObjectInputStream(socket.getInputStream());
-        }catch (Exception e){
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * Charge la liste des cours offerts pour une session donnée.
-     */
-    public void charger(){
-        try {
-            client.connect();
-            int choix = 0;
-            while (choix < 1 || choix > 3) {
-                // Afficher le menu de choix de session
-                System.out.println("Veuillez choisir la session pour laquelle vous voulez consulter la liste des cours:");
-                System.out.println("1. Automne");
-                System.out.println("2. Hiver");
-                System.out.println("3. Été");
-                System.out.print("> Choix: ");
-                choix = scanner.nextInt();
-
-                if (choix < 1 || choix > 3) {
-                    System.out.println("Erreur: Choix invalide. Veuillez choisir une valeur entre 1 et 3.");
-                }
-            }
-
-            // Entrer la bonne valeur dans la variable session selon le choix
-            switch (choix) {
-                case 1:
-                    session = "Automne";
-                    break;
-                case 2:
-                    session = "Hiver";
-                    break;
-                case 3:
-                    session = "Ete";
-                    break;
-                default:
-                    System.out.println("Choix invalide. Fermeture du client.");
-                    return;
-            }
-
-            // Envoyer une requête pour récupérer la liste des cours en fonction du choix de session
-            objectOutputStream.writeObject(LOAD_COMMAND + " " + session);
-            objectOutputStream.flush();
-
-            // Lire et affiche la liste des cours envoyée par le serveur
-            System.out.println("Les cours offerts pendant la session d'" + session + " sont:");
-            courses = (ArrayList<Course>) objectInputStream.readObject();
-            int compteur = 1;
-            for (Course course : courses) {
-                System.out.println(compteur + ". " + course.getCode() + "\t" + course.getName());
-                compteur ++;
-            }
-
-            client.disconnect();
-
-        } catch (IOException e) {
-            // Gestion de l'exception IOException en affichant la trace de la pile d'exécution
-            e.printStackTrace();
-        } catch (ClassNotFoundException e) {
-            // Gestion de l'exception ClassNotFoundException en affichant un message d'erreur
-            System.out.println("Classe n'a pas été trouvée");
-        }
-    }
-
-    /**
-     * Permet à l'utilisateur de s'inscrire à des cours.
-     * @throws IOException En cas d'erreur lors de la lecture ou de l'écriture des objets.
-     * @throws ClassNotFoundException En cas d'erreur de classe non trouvée lors de la désérialisation.
-     */
-    public void inscription() throws IOException, ClassNotFoundException {
-        // Afficher le menu de choix pour consulter les cours offerts pour une autre session ou pour s'inscrire à un
-        // cours dans la session déjà affichée.
-        int choix = 0;
-        while (choix < 1 || choix > 2) {
-            System.out.println("> Choix:");
-            System.out.println("1. Consulter les cours offerts pour une autre session");
-            System.out.println("2. Inscription à un cours");
-            System.out.print("> Choix: ");
-            choix = scanner.nextInt();
-            scanner.nextLine();
-            if (choix < 1 || choix > 2) {
-                System.out.println("Erreur: Choix invalide. Veuillez choisir une valeur de 1 ou 2.");
-            }
-            // Si l'utilisateur veut consulter les cours pour une autre session, on refait appel à la méthode charger()
-            if (choix == 1){
-                charger();
-                // Mettre le choix à 0 pour recommencer la boucle
-                choix = 0;
-            }
-        }
-
-        String prenom = "";
-        String nom = "";
-        String email = "";
-        String matricule = "";
-        String code = "";
-
-        // Saisie du prénom avec vérification
-        while (prenom.isEmpty()) {
-            System.out.print("Veuillez saisir votre prénom: ");
-            prenom = scanner.nextLine();
-        }
-
-        // Saisie du nom avec vérification
-        while (nom.isEmpty()) {
-            System.out.print("Veuillez saisir votre nom: ");
-            nom = scanner.nextLine();
-        }
-
-        // Saisie de l'email avec vérification
-        while (email.isEmpty() || !email.matches("[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Z|a-z]{2,}")) {
-            System.out.print("Veuillez saisir votre email: ");
-            email = scanner.nextLine();
-            if (!email.isEmpty() && !email.matches("[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Z|a-z]{2,}")) {
-                System.out.println("Erreur: L'email n'est pas valide.");
-            }
-        }
-
-        // Saisie du matricule avec vérification
-        while (matricule.isEmpty() || !matricule.matches("\\d{6}")) {
-            System.out.print("Veuillez saisir votre matricule (6 chiffres): ");
-            matricule = scanner.nextLine();
-            if (!matricule.isEmpty() && !matricule.matches("\\d{6}")) {
-                System.out.println("Erreur: Le matricule doit contenir 6 chiffres.");
-            }
-        }
-
-        // Saisie du code du cours avec vérification
-        boolean coursExiste = false;
-        while (!coursExiste) {
-            System.out.print("Veuillez saisir le code du cours: ");
-            code = scanner.nextLine();
-            for (Course course : courses) {
-                if (course.getCode().equals(code)) {
-                    coursExiste = true;
-                    // Récupérer le nom du cours choisi
-                    courseName = course.getName();
-                    break;
-                }
-            }
-            if (!coursExiste) {
-                System.out.println("Erreur: Le code du cours n'est pas valide.");
-            }
-        }
-
-        // Créer le cours choisit et le formulaire remplit pour l'envoyer en requête
-        Course coursInscrit = new Course(courseName, code, session);
-        RegistrationForm form = new RegistrationForm(prenom, nom, email, matricule, coursInscrit);
-
-        // Envoyer une requête d'inscription pour le cours choisi
-        client.connect();
-        objectOutputStream.writeObject(REGISTER_COMMAND);
-        objectOutputStream.writeObject(form);
-        objectOutputStream.flush();
-
-        //Avoir la confirmation du serveur
-        System.out.println(objectInputStream.readObject());
-    }
-
-    /**
-     * Méthode pour se déconnecter du serveur.
-     * @throws IOException En cas d'erreur lors de la déconnexion.
-     */
-    public void disconnect() throws IOException{
-        objectOutputStream.close();
-        objectInputStream.close();
-        socket.close();
-        }
-    }
-
+package client;
+
+import server.BinaryProtocol;
+import server.CourseIndex;
+import server.models.Course;
+import server.models.RegistrationForm;
+
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Scanner;
+
+/**
+ * La classe Client représente le client qui se connecte au serveur pour s'inscrire à des cours.
+ * Le client échange avec le serveur à l'aide du protocole binaire décrit par BinaryProtocol, sur une seule
+ * connexion gardée ouverte pendant toute la session de l'utilisateur. Le serveur ferme une connexion inactive
+ * (voir Server.IDLE_TIMEOUT) : si la connexion est fermée avant la réponse à une requête, elle est rouverte et la
+ * requête est renvoyée une seule fois.
+ */
+public class Client {
+    /**
+     * Commande d'inscription.
+     */
+    public final static String REGISTER_COMMAND = "INSCRIRE";
+
+    /**
+     * Commande d'inscription à plusieurs cours en une seule requête.
+     */
+    public final static String BATCH_REGISTER_COMMAND = "INSCRIRE_LOT";
+
+    /**
+     * Commande de chargement des cours.
+     */
+    public final static String LOAD_COMMAND = "CHARGER";
+
+    /**
+     * Mot qui rend conditionnelle une demande de chargement : la liste n'est renvoyée que si sa version diffère.
+     */
+    public final static String IF_NOT_VERSION = "SI_DIFFERENT";
+
+    /**
+     * Commande de recherche de cours par préfixe de code ou par mots du nom.
+     */
+    public final static String SEARCH_COMMAND = "CHERCHER";
+
+    /**
+     * Sessions offertes, chargées ensemble à la première consultation.
+     */
+    public final static String[] SESSIONS = {"Automne", "Hiver", "Ete"};
+    private static Client client;
+    private Socket socket;
+    private DataInputStream dataInputStream;
+    private DataOutputStream dataOutputStream;
+    private final Scanner scanner = new Scanner(System.in);
+    private ArrayList<Course> courses;
+    private String session;
+    private int nextRequestId = 1;
+    private final Map<Integer, BinaryProtocol.Frame> pendingResponses = new HashMap<>();
+    private final CourseCache courseCache = CourseCache.fromSystemProperty();
+    private boolean sessionsLoaded;
+    private boolean responded;
+
+    /**
+     * Méthode principale pour lancer le client.
+     * @param args Les arguments en ligne de commande.
+     * @throws Exception Si une exception survient lors de l'exécution du client.
+     */
+    public static void main(String[] args) throws Exception {
+        client = new Client();
+        System.out.println("*** Bienvenue au portail d'inscription de cours de l'UDEM ***");
+        client.connect();
+        client.charger();
+        client.inscription();
+        client.disconnect();
+    }
+
+    /**
+     * Établit une connexion avec le serveur et effectue la poignée de main du protocole binaire.
+     */
+    public void connect() {
+        try{
+            open();
+        }catch (Exception e){
+            e.printStackTrace();
+        }
+    }
+
+    private void open() throws IOException {
+        socket = new Socket("localhost", 1337);
+        dataOutputStream = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        dataInputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        BinaryProtocol.writeHandshake(dataOutputStream);
+        BinaryProtocol.readHandshake(dataInputStream);
+    }
+
+    /**
+     * Échange de requêtes et de réponses avec le serveur, qui peut être rejoué sur une nouvelle connexion.
+     */
+    private interface Exchange<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * Exécute un échange avec le serveur. Si la connexion se révèle fermée avant la première réponse, par exemple
+     * parce que le serveur a fermé la connexion restée inactive pendant que l'utilisateur remplissait le
+     * formulaire, la connexion est rouverte, avec une nouvelle poignée de main, et l'échange est rejoué une fois.
+     * @param exchange L'échange à exécuter.
+     * @return Le résultat de l'échange.
+     * @throws IOException En cas d'erreur lors de la lecture ou de l'écriture des messages.
+     */
+    private <T> T exchange(Exchange<T> exchange) throws IOException {
+        responded = false;
+        try {
+            return exchange.run();
+        } catch (EOFException | SocketException e) {
+            if (responded) {
+                throw e;
+            }
+            reconnect();
+            return exchange.run();
+        }
+    }
+
+    /**
+     * Ferme la connexion perdue et en ouvre une nouvelle. Les réponses gardées appartiennent à l'ancienne
+     * connexion et sont oubliées.
+     */
+    private void reconnect() throws IOException {
+        if (socket != null) {
+            socket.close();
+        }
+        pendingResponses.clear();
+        open();
+    }
+
+    /**
+     * Charge la liste des cours offerts pour une session donnée.
+     * À la première consultation, les cours de toutes les sessions sont demandés en une seule fois, sans attendre
+     * chaque réponse. Chaque demande porte la version de la liste gardée dans le cache du client : une liste
+     * inchangée n'est pas renvoyée par le serveur, et consulter une session ensuite ne coûte que quelques octets.
+     */
+    public void charger(){
+        try {
+            int choix = 0;
+            while (choix < 1 || choix > 3) {
+                // Afficher le menu de choix de session
+                System.out.println("Veuillez choisir la session pour laquelle vous voulez consulter la liste des cours:");
+                System.out.println("1. Automne");
+                System.out.println("2. Hiver");
+                System.out.println("3. Été");
+                System.out.print("> Choix: ");
+                choix = scanner.nextInt();
+
+                if (choix < 1 || choix > 3) {
+                    System.out.println("Erreur: Choix invalide. Veuillez choisir une valeur entre 1 et 3.");
+                }
+            }
+
+            // Entrer la bonne valeur dans la variable session selon le choix
+            switch (choix) {
+                case 1:
+                    session = "Automne";
+                    break;
+                case 2:
+                    session = "Hiver";
+                    break;
+                case 3:
+                    session = "Ete";
+                    break;
+                default:
+                    System.out.println("Choix invalide. Fermeture du client.");
+                    return;
+            }
+
+            // Envoyer les requêtes pour récupérer la liste des cours de toutes les sessions, puis seulement celle
+            // de la session choisie
+            if (!sessionsLoaded) {
+                chargerSessions(SESSIONS);
+                sessionsLoaded = true;
+            } else {
+                chargerSessions(session);
+            }
+
+            // Lire et affiche la liste des cours envoyée par le serveur
+            System.out.println("Les cours offerts pendant la session d'" + session + " sont:");
+            courses = courseCache.getCourses(session);
+            int compteur = 1;
+            for (Course course : courses) {
+                System.out.println(compteur + ". " + course.getCode() + "\t" + course.getName());
+                compteur ++;
+            }
+
+        } catch (BinaryProtocol.RetryLaterException e) {
+            // Le serveur est trop sollicité : l'utilisateur peut redemander les cours un peu plus tard. La liste
+            // affichée avant ne correspond plus à la session choisie.
+            courses = null;
+            System.out.println(e.getMessage());
+        } catch (IOException e) {
+            // Gestion de l'exception IOException en affichant la trace de la pile d'exécution
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Demande les cours de plusieurs sessions en envoyant toutes les requêtes avant de lire les réponses.
+     * Chaque demande est conditionnelle : le serveur répond par la version de la liste, suivie de la liste
+     * seulement si elle diffère de celle du cache.
+     * @param sessions Les sessions à charger.
+     * @throws IOException En cas d'erreur lors de la lecture ou de l'écriture des messages.
+     */
+    public void chargerSessions(String... sessions) throws IOException {
+        exchange(() -> {
+            int[] requestIds = new int[sessions.length];
+            for (int i = 0; i < sessions.length; i++) {
+                requestIds[i] = send(LOAD_COMMAND + " " + sessions[i] + " " + IF_NOT_VERSION + " "
+                        + courseCache.getVersion(sessions[i]));
+            }
+            dataOutputStream.flush();
+            for (int i = 0; i < sessions.length; i++) {
+                BinaryProtocol.Frame version = awaitResponse(requestIds[i]);
+                if (version.isModified()) {
+                    // Une longue liste arrive en plusieurs pages, qui se suivent sur la connexion
+                    courseCache.put(sessions[i], version.getVersion(),
+                            BinaryProtocol.readCourseList(awaitResponse(requestIds[i]), dataInputStream));
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Écrit une commande dans le tampon de sortie, sans l'envoyer.
+     * @param line La ligne de commande.
+     * @return L'identifiant de la requête.
+     * @throws IOException En cas d'erreur lors de l'écriture.
+     */
+    private int send(String line) throws IOException {
+        int requestId = nextRequestId++;
+        dataOutputStream.write(BinaryProtocol.encodeCommand(requestId, line));
+        return requestId;
+    }
+
+    /**
+     * Attend la réponse à une requête. Les réponses à d'autres requêtes reçues entre-temps sont gardées.
+     * Pendant l'attente d'une inscription dans la salle d'attente du serveur, la position reçue est affichée.
+     * @param requestId L'identifiant de la requête.
+     * @return La trame de réponse.
+     * @throws IOException En cas d'erreur lors de la lecture.
+     */
+    private BinaryProtocol.Frame awaitResponse(int requestId) throws IOException {
+        BinaryProtocol.Frame frame = pendingResponses.remove(requestId);
+        while (frame == null) {
+            BinaryProtocol.Frame received = BinaryProtocol.readFrame(dataInputStream);
+            responded = true;
+            if (received.isQueuePosition()) {
+                System.out.println("Position dans la file d'attente: " + received.getQueuePosition()
+                        + " (environ " + (received.getEstimatedWait() + 999) / 1000 + " s)");
+            } else if (received.getRequestId() == requestId) {
+                frame = received;
+            } else {
+                pendingResponses.put(received.getRequestId(), received);
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * Permet à l'utilisateur de s'inscrire à des cours.
+     * L'utilisateur saisit un ou plusieurs codes de cours de la session affichée; toutes les inscriptions sont
+     * envoyées dans une seule requête, et le serveur répond par un message pour chaque cours.
+     * @throws IOException En cas d'erreur lors de la lecture ou de l'écriture des messages.
+     */
+    public void inscription() throws IOException {
+        // Afficher le menu de choix pour consulter les cours offerts pour une autre session ou pour s'inscrire à un
+        // cours dans la session déjà affichée.
+        int choix = 0;
+        while (choix < 1 || choix > 3) {
+            System.out.println("> Choix:");
+            System.out.println("1. Consulter les cours offerts pour une autre session");
+            System.out.println("2. Inscription à un cours");
+            System.out.println("3. Rechercher un cours de la session");
+            System.out.print("> Choix: ");
+            choix = scanner.nextInt();
+            scanner.nextLine();
+            if (choix < 1 || choix > 3) {
+                System.out.println("Erreur: Choix invalide. Veuillez choisir une valeur de 1, 2 ou 3.");
+            }
+            // L'inscription et la recherche portent sur la session affichée : ses cours doivent avoir été chargés
+            if ((choix == 2 || choix == 3) && courses == null) {
+                System.out.println("Erreur: aucune liste de cours n'est chargée. Veuillez consulter les cours d'une session.");
+                choix = 0;
+            }
+            // Si l'utilisateur veut consulter les cours pour une autre session, on refait appel à la méthode charger()
+            if (choix == 1){
+                charger();
+                // Mettre le choix à 0 pour recommencer la boucle
+                choix = 0;
+            }
+            // Si l'utilisateur veut rechercher un cours, on affiche les résultats puis on recommence la boucle
+            if (choix == 3) {
+                rechercher();
+                choix = 0;
+            }
+        }
+
+        String prenom = "";
+        String nom = "";
+        String email = "";
+        String matricule = "";
+
+        // Saisie du prénom avec vérification
+        while (prenom.isEmpty()) {
+            System.out.print("Veuillez saisir votre prénom: ");
+            prenom = scanner.nextLine();
+        }
+
+        // Saisie du nom avec vérification
+        while (nom.isEmpty()) {
+            System.out.print("Veuillez saisir votre nom: ");
+            nom = scanner.nextLine();
+        }
+
+        // Saisie de l'email avec vérification
+        while (email.isEmpty() || !email.matches("[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Z|a-z]{2,}")) {
+            System.out.print("Veuillez saisir votre email: ");
+            email = scanner.nextLine();
+            if (!email.isEmpty() && !email.matches("[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Z|a-z]{2,}")) {
+                System.out.println("Erreur: L'email n'est pas valide.");
+            }
+        }
+
+        // Saisie du matricule avec vérification
+        while (matricule.isEmpty() || !matricule.matches("\\d{6}")) {
+            System.out.print("Veuillez saisir votre matricule (6 chiffres): ");
+            matricule = scanner.nextLine();
+            if (!matricule.isEmpty() && !matricule.matches("\\d{6}")) {
+                System.out.println("Erreur: Le matricule doit contenir 6 chiffres.");
+            }
+        }
+
+        // Saisie des codes des cours avec vérification, jusqu'à une ligne vide
+        ArrayList<RegistrationForm> forms = new ArrayList<>();
+        while (true) {
+            System.out.print(forms.isEmpty()
+                    ? "Veuillez saisir le code du cours: "
+                    : "Veuillez saisir le code d'un autre cours (ligne vide pour terminer): ");
+            String code = scanner.nextLine();
+            if (code.isEmpty() && !forms.isEmpty()) {
+                break;
+            }
+            Course coursInscrit = null;
+            for (Course course : courses) {
+                if (course.getCode().equals(code)) {
+                    // Créer le cours choisi avec son nom
+                    coursInscrit = new Course(course.getName(), code, session);
+                    break;
+                }
+            }
+            if (coursInscrit == null) {
+                System.out.println("Erreur: Le code du cours n'est pas valide.");
+                continue;
+            }
+            // Ajouter au panier le formulaire remplit pour ce cours
+            forms.add(new RegistrationForm(prenom, nom, email, matricule, coursInscrit));
+        }
+
+        // Envoyer une seule requête d'inscription pour tous les cours choisis sur la connexion déjà ouverte, ou
+        // sur une nouvelle connexion si le serveur a fermé la connexion pendant la saisie. Si le serveur refuse la
+        // requête pour l'instant, le formulaire est gardé et peut être renvoyé.
+        while (true) {
+            try {
+                exchange(() -> {
+                    int requestId = send(BATCH_REGISTER_COMMAND);
+                    dataOutputStream.write(BinaryProtocol.encodeForms(requestId, forms));
+                    dataOutputStream.flush();
+
+                    //Avoir la confirmation du serveur pour chaque cours
+                    for (String message : awaitResponse(requestId).getMessages()) {
+                        System.out.println(message);
+                    }
+                    return null;
+                });
+                return;
+            } catch (BinaryProtocol.RetryLaterException e) {
+                System.out.println(e.getMessage());
+                if (!reessayer(e)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Demande à l'utilisateur s'il veut renvoyer une requête refusée par le serveur et, s'il le veut, attend le
+     * délai conseillé par le serveur.
+     * @param refus Le refus du serveur.
+     * @return true si la requête doit être renvoyée.
+     */
+    private boolean reessayer(BinaryProtocol.RetryLaterException refus) {
+        System.out.print("> Réessayer dans environ " + (refus.getRetryAfter() + 999) / 1000 + " s? (o/n): ");
+        if (!scanner.nextLine().trim().equalsIgnoreCase("o")) {
+            return false;
+        }
+        try {
+            Thread.sleep(refus.getRetryAfter());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Recherche des cours de la session affichée par préfixe de code (par exemple "IFT2") ou par mots du nom.
+     * Le serveur ne renvoie qu'une page de résultats à la fois; l'utilisateur peut demander la page suivante.
+     * @throws IOException En cas d'erreur lors de la lecture ou de l'écriture des messages.
+     */
+    public void rechercher() throws IOException {
+        System.out.print("Veuillez saisir un début de code ou des mots du nom du cours: ");
+        String texte = scanner.nextLine().trim();
+        int page = 0;
+        while (true) {
+            int numero = page;
+            CourseIndex.Page resultats;
+            try {
+                resultats = exchange(() -> {
+                    int requestId = send(SEARCH_COMMAND + " " + session + " " + numero + " " + texte);
+                    dataOutputStream.flush();
+                    return awaitResponse(requestId).getCoursePage();
+                });
+            } catch (BinaryProtocol.RetryLaterException e) {
+                // Recherche refusée pour l'instant : la même page peut être redemandée
+                System.out.println(e.getMessage());
+                if (reessayer(e)) {
+                    continue;
+                }
+                return;
+            }
+            if (resultats.getTotal() == 0) {
+                System.out.println("Aucun cours ne correspond à la recherche.");
+                return;
+            }
+            int compteur = resultats.getOffset() + 1;
+            for (Course course : resultats.getCourses()) {
+                System.out.println(compteur + ". " + course.getCode() + "\t" + course.getName());
+                compteur ++;
+            }
+            System.out.println((compteur - 1) + " cours affichés sur " + resultats.getTotal() + ".");
+            if (!resultats.hasNext()) {
+                return;
+            }
+            System.out.print("> Afficher la page suivante? (o/n): ");
+            if (!scanner.nextLine().trim().equalsIgnoreCase("o")) {
+                return;
+            }
+            page++;
+        }
+    }
+
+    /**
+     * Méthode pour se déconnecter du serveur.
+     * @throws IOException En cas d'erreur lors de la déconnexion.
+     */
+    public void disconnect() throws IOException{
+        dataOutputStream.close();
+        dataInputStream.close();
+        socket.close();
+        }
+    }
+
@@ -0,0 +1,503 @@
+package server;
+
+import server.models.RegistrationForm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Classe ClientConnection qui représente le contexte d'une connexion client côté serveur.
+ * Chaque connexion possède son propre socket et ses propres flux d'entrée et de sortie, ce qui permet au serveur
+ * de traiter plusieurs clients en parallèle sans partager d'état entre eux.
+ * La connexion détecte le protocole du client à ses premiers octets : le protocole binaire (voir BinaryProtocol)
+ * ou la sérialisation Java des anciens clients.
+ * Le traitement d'une requête peut être reporté (voir defer()) : le moteur libère alors son thread sans terminer la
+ * réponse, et la requête est terminée plus tard par resume(), depuis un autre thread.
+ */
+public class ClientConnection {
+
+    /**
+     * Protocoles supportés par le serveur.
+     */
+    public enum Protocol {
+        /**
+         * Sérialisation Java (ObjectInputStream/ObjectOutputStream) des anciens clients.
+         */
+        SERIALIZED,
+        /**
+         * Protocole binaire à trames, voir BinaryProtocol.
+         */
+        BINARY
+    }
+
+    /**
+     * Filtre de désérialisation des anciens clients : seules les listes et les classes du modèle sont acceptées.
+     */
+    public final static ObjectInputFilter SERIALIZATION_FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=10;maxrefs=10000;maxbytes=1048576;java.util.ArrayList;server.models.*;!*");
+
+    private final Socket socket;
+    private final Closeable channel;
+    private final InetAddress address;
+    private final String description;
+    private final ServerMetrics metrics;
+    private Protocol protocol;
+    private ObjectInputStream objectInputStream;
+    private ObjectOutputStream objectOutputStream;
+    private DataInputStream dataInputStream;
+    private DataOutputStream dataOutputStream;
+    private OutputStream rawOutputStream;
+    private int requestId;
+    private Runnable resumeAction;
+    private boolean deferred;
+    private boolean released;
+    private boolean resumed;
+
+    /**
+     * Constructeur de la classe ClientConnection.
+     * @param socket Le socket accepté par le serveur pour ce client.
+     */
+    public ClientConnection(Socket socket) {
+        this(socket, null);
+    }
+
+    /**
+     * Constructeur de la classe ClientConnection, qui compte les octets reçus et envoyés.
+     * @param socket Le socket accepté par le serveur pour ce client.
+     * @param metrics Les mesures du serveur, ou null pour ne rien compter.
+     */
+    public ClientConnection(Socket socket, ServerMetrics metrics) {
+        this.socket = socket;
+        this.channel = socket;
+        this.address = socket.getInetAddress();
+        this.description = socket.toString();
+        this.metrics = metrics;
+    }
+
+    /**
+     * Constructeur utilisé par le moteur non bloquant, dont les flux sont des tampons en mémoire.
+     * La requête lue ne contient pas la poignée de main, et la réponse produite ne doit pas la contenir non plus :
+     * avec la sérialisation Java, l'appelant retire l'en-tête du flux de sortie après la construction.
+     * @param protocol Le protocole détecté pour ce client.
+     * @param input Les octets de la requête reçue.
+     * @param output Le tampon dont le contenu sera envoyé au client.
+     * @param channel Le canal du client, fermé avec la connexion.
+     * @param address L'adresse du client, ou null si elle n'est pas connue.
+     * @param description La description du client pour les messages du serveur.
+     * @throws IOException En cas d'erreur lors de la création des flux.
+     */
+    ClientConnection(Protocol protocol, InputStream input, OutputStream output,
+                     Closeable channel, InetAddress address, String description) throws IOException {
+        this.socket = null;
+        this.channel = channel;
+        this.address = address;
+        this.description = description;
+        this.metrics = null;
+        init(protocol, input, output);
+    }
+
+    /**
+     * Détecte le protocole du client et ouvre les flux de la connexion.
+     * Avec la sérialisation Java, le flux d'entrée est créé en premier, comme le client crée son flux de sortie
+     * en premier. Avec le protocole binaire, le serveur répond à la poignée de main du client.
+     * @throws IOException En cas d'erreur lors de la création des flux ou de poignée de main invalide.
+     */
+    public void open() throws IOException {
+        InputStream socketInput = socket.getInputStream();
+        OutputStream socketOutput = socket.getOutputStream();
+        if (metrics != null) {
+            socketInput = new CountingInputStream(socketInput, metrics);
+            socketOutput = new CountingOutputStream(socketOutput, metrics);
+        }
+        BufferedInputStream input = new BufferedInputStream(socketInput);
+        input.mark(2);
+        int b0 = input.read();
+        int b1 = input.read();
+        input.reset();
+        if (BinaryProtocol.isBinary(b0, b1)) {
+            init(Protocol.BINARY, input, new BufferedOutputStream(socketOutput));
+            BinaryProtocol.readHandshake(dataInputStream);
+            BinaryProtocol.writeHandshake(dataOutputStream);
+        } else {
+            init(Protocol.SERIALIZED, input, socketOutput);
+        }
+    }
+
+    private void init(Protocol protocol, InputStream input, OutputStream output) throws IOException {
+        this.protocol = protocol;
+        this.rawOutputStream = output;
+        if (protocol == Protocol.BINARY) {
+            dataInputStream = new DataInputStream(input);
+            dataOutputStream = new DataOutputStream(output);
+        } else {
+            objectInputStream = new ObjectInputStream(input);
+            objectInputStream.setObjectInputFilter(SERIALIZATION_FILTER);
+            objectOutputStream = new ObjectOutputStream(output);
+        }
+    }
+
+    /**
+     * Obtient le protocole utilisé par le client.
+     * @return Le protocole de la connexion.
+     */
+    public Protocol getProtocol() {
+        return protocol;
+    }
+
+    /**
+     * Obtient le socket du client.
+     * @return Le socket du client, ou null pour une connexion du moteur non bloquant.
+     */
+    public Socket getSocket() {
+        return socket;
+    }
+
+    /**
+     * Obtient l'adresse IP du client.
+     * @return L'adresse du client, ou null si elle n'est pas connue.
+     */
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Obtient le flux d'entrée d'objets de la connexion.
+     * @return Le flux d'entrée d'objets, ou null si le client utilise le protocole binaire.
+     */
+    public ObjectInputStream getObjectInputStream() {
+        return objectInputStream;
+    }
+
+    /**
+     * Obtient le flux de sortie d'objets de la connexion.
+     * @return Le flux de sortie d'objets, ou null si le client utilise le protocole binaire.
+     */
+    public ObjectOutputStream getObjectOutputStream() {
+        return objectOutputStream;
+    }
+
+    /**
+     * Fixe l'action du moteur qui termine une requête reportée et passe à la requête suivante du client.
+     * @param action L'action exécutée par resume(), dans le thread qui l'appelle.
+     */
+    void onResume(Runnable action) {
+        this.resumeAction = action;
+    }
+
+    /**
+     * Reporte la fin de la requête en cours : après le traitement, le moteur libère son thread sans terminer la
+     * réponse et sans lire la requête suivante, jusqu'à l'appel de resume().
+     */
+    synchronized void defer() {
+        deferred = true;
+        released = false;
+        resumed = false;
+    }
+
+    /**
+     * Indique si la requête en cours est reportée et n'a pas encore été reprise par le moteur.
+     * @return true si la requête est reportée.
+     */
+    synchronized boolean isDeferred() {
+        return deferred;
+    }
+
+    /**
+     * Appelée par le moteur après le traitement d'une requête, pour savoir s'il doit libérer la connexion.
+     * Une requête reportée mais déjà terminée par resume() est reprise dans le thread courant.
+     * @return true si la requête est reportée : resume() reprendra la connexion.
+     */
+    synchronized boolean release() {
+        if (deferred && !resumed) {
+            released = true;
+            return true;
+        }
+        deferred = false;
+        return false;
+    }
+
+    /**
+     * Termine une requête reportée, une fois sa réponse écrite : le moteur termine la réponse et passe à la requête
+     * suivante, dans le thread courant si la connexion a déjà été libérée, sinon dans le thread qui la libère.
+     */
+    void resume() {
+        synchronized (this) {
+            resumed = true;
+            if (!released) {
+                return;
+            }
+            deferred = false;
+            released = false;
+        }
+        resumeAction.run();
+    }
+
+    /**
+     * Lit la prochaine ligne de commande envoyée par le client.
+     * Avec le protocole binaire, l'identifiant de la requête est retenu pour les réponses qui suivent.
+     * @return La ligne de commande.
+     * @throws IOException En cas d'erreur lors de la lecture.
+     * @throws ClassNotFoundException En cas d'erreur de classe non trouvée lors de la désérialisation.
+     */
+    public String readCommand() throws IOException, ClassNotFoundException {
+        if (protocol == Protocol.BINARY) {
+            BinaryProtocol.Frame frame = BinaryProtocol.readFrame(dataInputStream, BinaryProtocol.MAX_REQUEST_LENGTH);
+            requestId = frame.getRequestId();
+            return frame.getCommand();
+        }
+        return objectInputStream.readObject().toString();
+    }
+
+    /**
+     * Lit le formulaire d'inscription envoyé par le client.
+     * @return Le formulaire d'inscription.
+     * @throws IOException En cas d'erreur lors de la lecture.
+     * @throws ClassNotFoundException En cas d'erreur de classe non trouvée lors de la désérialisation.
+     */
+    public RegistrationForm readForm() throws IOException, ClassNotFoundException {
+        if (protocol == Protocol.BINARY) {
+            return BinaryProtocol.readForm(dataInputStream);
+        }
+        return (RegistrationForm) objectInputStream.readObject();
+    }
+
+    /**
+     * Lit la liste des formulaires d'inscription envoyée par le client avec la commande INSCRIRE_LOT.
+     * @return Les formulaires d'inscription.
+     * @throws IOException En cas d'erreur lors de la lecture.
+     * @throws ClassNotFoundException En cas d'erreur de classe non trouvée lors de la désérialisation.
+     */
+    @SuppressWarnings("unchecked")
+    public ArrayList<RegistrationForm> readForms() throws IOException, ClassNotFoundException {
+        if (protocol == Protocol.BINARY) {
+            return BinaryProtocol.readForms(dataInputStream);
+        }
+        return (ArrayList<RegistrationForm>) objectInputStream.readObject();
+    }
+
+    /**
+     * Envoie un message texte au client, en réponse à la requête en cours.
+     * Avec le protocole binaire, le message reste dans le tampon jusqu'à flushIfIdle().
+     * @param message Le message à envoyer.
+     * @throws IOException En cas d'erreur lors de l'écriture.
+     */
+    public void sendMessage(String message) throws IOException {
+        if (protocol == Protocol.BINARY) {
+            dataOutputStream.write(BinaryProtocol.encodeMessage(requestId, message));
+        } else {
+            objectOutputStream.writeObject(message);
+            objectOutputStream.flush();
+        }
+    }
+
+    /**
+     * Envoie une liste de messages texte au client, en réponse à la requête en cours.
+     * Avec le protocole binaire, les messages restent dans le tampon jusqu'à flushIfIdle().
+     * @param messages Les messages à envoyer.
+     * @throws IOException En cas d'erreur lors de l'écriture.
+     */
+    public void sendMessages(List<String> messages) throws IOException {
+        if (protocol == Protocol.BINARY) {
+            dataOutputStream.write(BinaryProtocol.encodeMessages(requestId, messages));
+        } else {
+            objectOutputStream.writeObject(new ArrayList<>(messages));
+            objectOutputStream.flush();
+        }
+    }
+
+    /**
+     * Répond à la requête en cours qu'elle est refusée et doit être renvoyée plus tard.
+     * Avec la sérialisation Java, seul le message est envoyé.
+     * @param message Le message destiné au client.
+     * @param retryAfter Le délai conseillé avant de réessayer, en millisecondes.
+     * @throws IOException En cas d'erreur lors de l'écriture.
+     */
+    public void sendRetryLater(String message, int retryAfter) throws IOException {
+        if (protocol == Protocol.BINARY) {
+            dataOutputStream.write(BinaryProtocol.encodeRetryLater(requestId, message, retryAfter));
+        } else {
+            objectOutputStream.writeObject(message);
+            objectOutputStream.flush();
+        }
+    }
+
+    /**
+     * Envoie au client la position de sa demande d'inscription dans la salle d'attente, immédiatement.
+     * Avec la sérialisation Java, rien n'est envoyé : l'ancien client n'attend que la réponse.
+     * @param position Le nombre de demandes servies avant celle du client.
+     * @param estimatedWait Le temps d'attente estimé, en millisecondes.
+     * @throws IOException En cas d'erreur lors de l'écriture.
+     */
+    public void sendQueuePosition(int position, int estimatedWait) throws IOException {
+        if (protocol == Protocol.BINARY) {
+            dataOutputStream.write(BinaryProtocol.encodeQueuePosition(requestId, position, estimatedWait));
+            dataOutputStream.flush();
+        }
+    }
+
+    /**
+     * Envoie au client la version de la liste des cours d'une session, en réponse à une demande conditionnelle.
+     * Seul le protocole binaire supporte ces demandes.
+     * @param version La version courante de la liste.
+     * @param modified true si la liste diffère de la version du client et sera envoyée ensuite.
+     * @throws IOException En cas d'erreur lors de l'écriture.
+     */
+    public void sendVersion(String version, boolean modified) throws IOException {
+        dataOutputStream.write(BinaryProtocol.encodeVersion(requestId, version, modified));
+    }
+
+    /**
+     * Envoie une page de résultats de recherche au client, en réponse à la requête en cours.
+     * Avec la sérialisation Java, seule la liste des cours de la page est envoyée.
+     * @param page La page de résultats.
+     * @throws IOException En cas d'erreur lors de l'écriture.
+     */
+    public void sendCoursePage(CourseIndex.Page page) throws IOException {
+        if (protocol == Protocol.BINARY) {
+            dataOutputStream.write(BinaryProtocol.encodeCoursePage(requestId, page));
+        } else {
+            objectOutputStream.writeObject(page.getCourses());
+            objectOutputStream.flush();
+        }
+    }
+
+    /**
+     * Écrit une réponse déjà encodée dans le protocole de la connexion (voir ResponseCache).
+     * Avec la sérialisation Java, le flux d'objets est réinitialisé avant et après les octets copiés : le client
+     * lit alors l'objet comme s'il était le premier du flux, et les références des objets écrits ensuite restent
+     * cohérentes des deux côtés. Avec le protocole binaire, les octets sont une trame complète, écrite avec
+     * l'identifiant de la requête en cours.
+     * @param encoded Les octets de la réponse, sans l'en-tête du flux.
+     * @throws IOException En cas d'erreur lors de l'écriture.
+     */
+    public void writeEncoded(byte[] encoded) throws IOException {
+        if (protocol == Protocol.BINARY) {
+            BinaryProtocol.writeFrame(dataOutputStream, encoded, requestId);
+            return;
+        }
+        objectOutputStream.reset();
+        objectOutputStream.flush();
+        rawOutputStream.write(encoded);
+        objectOutputStream.reset();
+        objectOutputStream.flush();
+    }
+
+    /**
+     * Vide les tampons de sortie si le client n'a pas déjà envoyé une autre requête.
+     * Lorsque le client envoie plusieurs requêtes à la suite, leurs réponses partent ensemble après la dernière.
+     * @throws IOException En cas d'erreur lors de l'écriture.
+     */
+    public void flushIfIdle() throws IOException {
+        if (protocol != Protocol.BINARY || dataInputStream.available() == 0) {
+            flush();
+        }
+    }
+
+    /**
+     * Vide les tampons de sortie de la connexion.
+     * @throws IOException En cas d'erreur lors de l'écriture.
+     */
+    public void flush() throws IOException {
+        if (protocol == Protocol.BINARY) {
+            dataOutputStream.flush();
+        } else if (objectOutputStream != null) {
+            objectOutputStream.flush();
+        }
+    }
+
+    /**
+     * Ferme les flux de sortie et d'entrée ainsi que le socket client.
+     * Le socket est fermé même si la fermeture d'un flux échoue.
+     * @throws IOException si une erreur se produit lors de la fermeture des flux ou du socket
+     */
+    public void close() throws IOException {
+        try {
+            if (objectOutputStream != null) {
+                objectOutputStream.close();
+            }
+            if (dataOutputStream != null) {
+                dataOutputStream.close();
+            }
+            if (objectInputStream != null) {
+                objectInputStream.close();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    /**
+     * Flux d'entrée qui compte les octets lus du socket.
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private final ServerMetrics metrics;
+
+        private CountingInputStream(InputStream in, ServerMetrics metrics) {
+            super(in);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                metrics.addBytesIn(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                metrics.addBytesIn(n);
+            }
+            return n;
+        }
+    }
+
+    /**
+     * Flux de sortie qui compte les octets écrits dans le socket.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private final ServerMetrics metrics;
+
+        private CountingOutputStream(OutputStream out, ServerMetrics metrics) {
+            super(out);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            metrics.addBytesOut(1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            // FilterOutputStream écrirait les octets un à un
+            out.write(b, off, len);
+            metrics.addBytesOut(len);
+        }
+    }
+}
@@ -1,200 +1,333 @@
-package ClientFX;
-
-import javafx.application.Application;
-import javafx.scene.*;
-import javafx.scene.control.Alert;
-import javafx.stage.Stage;
-import server.models.Course;
-import server.models.RegistrationForm;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.net.Socket;
-import java.util.ArrayList;
-import java.util.List;
-
-/**
- * Cette classe représente le client JavaFX pour l'application d'inscription à des cours à l'UDEM.
- * Elle hérite de la classe Application de JavaFX pour gérer l'interface graphique.
- */
-public class ClientFX extends Application {
-    private View view;
-    private Socket socket;
-    private ObjectInputStream objectInputStream;
-    private ObjectOutputStream objectOutputStream;
-
-    /**
-     * Commande de chargement des cours.
-     */
-    public final static String LOAD_COMMAND = "CHARGER";
-
-    /**
-     * Commande d'inscription.
-     */
-    public final static String REGISTER_COMMAND = "INSCRIRE";
-    private ArrayList<Course> courses;
-    private String session;
-
-    public static void main(String[] args) {
-        launch(args);
-    }
-
-    /**
-     * Point d'entrée de l'application JavaFX. Cette méthode est appelée au démarrage de l'application.
-     * Elle crée l'interface utilisateur, configure les actions des boutons et affiche la fenêtre principale.
-     * @param primaryStage L'objet Stage principal de l'application JavaFX.
-     */
-    @Override
-    public void start(Stage primaryStage) {
-        view = new View();
-
-        charger();
-        inscription();
-
-        primaryStage.setTitle("Inscription UDEM");
-        primaryStage.setResizable(false);
-        primaryStage.setScene(new Scene(view.root,600,400));
-        primaryStage.show();
-    }
-
-    /**
-     * Méthode pour charger les cours à partir du serveur en fonction de la session sélectionnée.
-     * Elle configure l'action du bouton "Charger" pour envoyer une demande au serveur et afficher les cours dans le tableau.
-     */
-    public void charger(){
-        // Lorsque l'utilisateur clique sur le bouton "charger"
-        view.charger.setOnAction((action) -> {
-            try{
-                connect();
-                view.tableCourse.getItems().clear();
-                // Prendre la valeur de la session à partir du choiceBox
-                session = view.choixSession.getValue();
-                // Envoyer la commande au serveur
-                objectOutputStream.writeObject(LOAD_COMMAND + " " + session);
-                objectOutputStream.flush();
-                // Lire la liste des cours envoyée par le serveur
-                courses = (ArrayList<Course>) objectInputStream.readObject();
-                // Rajouter les cours au tableau de l'application
-                for (Course course : courses) {
-                    view.tableCourse.getItems().add(new Course(course.getName(),course.getCode(), session));
-                }
-                disconnect();
-            }catch (Exception e){
-                e.printStackTrace();
-            }
-        });
-    }
-
-    /**
-     * Méthode pour gérer l'inscription à un cours. Elle configure l'action du bouton "Envoyer" pour envoyer le
-     * formulaire d'inscription au serveur.
-     * Elle effectue également des vérifications sur les champs du formulaire avant d'envoyer les données au serveur.
-     */
-    public void inscription(){
-        // Lorsque l'utilisateur clique sur le bouton "envoyer"
-        view.envoyer.setOnAction((action) -> {
-            try{
-                // boolean true s'il n'y a aucune erreur dans le formulaire
-                boolean noError = true;
-                // Créer un tableau pour les erreurs
-                List<String> erreurs = new ArrayList<>();
-
-                // Vérifier si aucun cours n'est sélectionné
-                if (view.tableCourse.getSelectionModel().isEmpty()) {
-                    erreurs.add("Vous devez sélectionner un cours!");
-                }
-
-                // Vérifier si le champ prénom est vide
-                String prenom = view.prenomTextField.getText();
-                if (prenom.isEmpty()) {
-                    erreurs.add("Vous devez entrer votre prénom!");
-                }
-
-                String nom = view.nomTextField.getText();
-                // Vérifier si le champ nom est vide
-                if (nom.isEmpty()) {
-                    erreurs.add("Vous devez entrer votre nom!");
-                }
-
-                String email = view.emailTextField.getText();
-                // Vérifier si le champ email est vide ou ne respecte pas la structure d'un email
-                if (email.isEmpty() || !email.matches("[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Z|a-z]{2,}")){
-                    erreurs.add("Le champ 'Email' est invalide!");
-                }
-
-                String matricule = view.matriculeTextField.getText();
-                // Vérifier si le champ matricule est vide ou n'est pas composé de 6 chiffres
-                if(matricule.isEmpty() || !matricule.matches("\\d{6}")){
-                    erreurs.add("Le champ 'Matricule' est invalide! (doit être composé de 6 chiffres)");
-                }
-
-                // Vérifier si la liste d'erreurs n'est pas vide
-                if (!erreurs.isEmpty()) {
-                    // Afficher les messages d'erreur
-                    Alert alert = new Alert(Alert.AlertType.ERROR);
-                    alert.setTitle("Error");
-                    alert.setHeaderText("Le formulaire est invalide");
-                    alert.setContentText(String.join("\n", erreurs));
-                    alert.showAndWait();
-                    // S'il y a des erreurs mettre le boolean à false
-                    noError = false;
-                }
-
-                // Vérifier s'il n'y a aucune erreur, si aucune erreur, on envoie le formulaire au serveur
-                if (noError) {
-                    // Créer un objet Course selon le cours sélectionné
-                    Course selectedCourse = view.tableCourse.getSelectionModel().getSelectedItem();
-
-                    String code = selectedCourse.getCode();
-                    String cours = selectedCourse.getName();
-
-                    Course coursInscrit = new Course(cours, code, session);
-                    // Créer un objet RegistrationForm avec les informations rempli par l'utilisateur
-                    RegistrationForm form = new RegistrationForm(prenom, nom, email, matricule, coursInscrit);
-
-                    // Envoyer la commande et le formulaire au serveur
-                    connect();
-                    objectOutputStream.writeObject(REGISTER_COMMAND);
-                    objectOutputStream.writeObject(form);
-                    objectOutputStream.flush();
-
-                    // Lire le message de succès envoyé par le serveur
-                    String message = (String) objectInputStream.readObject();
-
-                    Alert alertSuccess = new Alert(Alert.AlertType.INFORMATION);
-                    alertSuccess.setTitle("Message");
-                    alertSuccess.setHeaderText("Message");
-                    alertSuccess.setContentText(message);
-                    alertSuccess.showAndWait();
-
-                    disconnect();
-                }
-            }catch (Exception e){
-                e.printStackTrace();
-            }
-        });
-    }
-
-    /**
-     * Établit une connexion avec le serveur.
-     */
-    public void connect() {
-        try{
-            socket = new Socket("localhost", 1337);
-            objectOutputStream = new ObjectOutputStream(socket.getOutputStream());
-            objectInputStream = new ObjectInputStream(socket.getInputStream());
-        }catch (Exception e){
-            e.printStackTrace();
-        }
-    }
-
-    /**
-     * Méthode pour se déconnecter du serveur.
-     * @throws IOException En cas d'erreur lors de la déconnexion.
-     */
-    public void disconnect() throws IOException {
-        objectOutputStream.close();
-        objectInputStream.close();
-        socket.close();
-    }
-}
+package ClientFX;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.*;
+import javafx.scene.control.Alert;
+import javafx.stage.Stage;
+import client.CourseCache;
+import server.BinaryProtocol;
+import server.models.Course;
+import server.models.RegistrationForm;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Cette classe représente le client JavaFX pour l'application d'inscription à des cours à l'UDEM.
+ * Elle hérite de la classe Application de JavaFX pour gérer l'interface graphique.
+ * Le client échange avec le serveur à l'aide du protocole binaire décrit par BinaryProtocol. Toutes les requêtes
+ * passent par le NetworkService, hors du thread de l'interface, sur une seule connexion gardée jusqu'à la
+ * fermeture de la fenêtre; leurs résultats sont affichés sur le thread de l'interface avec Platform.runLater.
+ * Pendant une requête, un indicateur de progression est affiché et la requête peut être annulée.
+ */
+public class ClientFX extends Application {
+    private View view;
+    private NetworkService network;
+    private final CourseCache courseCache = CourseCache.fromSystemProperty();
+    private int pendingRequests;
+
+    /**
+     * Commande de chargement des cours.
+     */
+    public final static String LOAD_COMMAND = "CHARGER";
+
+    /**
+     * Commande de chargement des cours en flux, par pages envoyées au fur et à mesure.
+     */
+    public final static String STREAM_LOAD_COMMAND = "CHARGER_FLUX";
+
+    /**
+     * Mot qui rend conditionnelle une demande de chargement : la liste n'est renvoyée que si sa version diffère.
+     */
+    public final static String IF_NOT_VERSION = "SI_DIFFERENT";
+
+    /**
+     * Commande d'inscription.
+     */
+    public final static String REGISTER_COMMAND = "INSCRIRE";
+
+    /**
+     * Commande de recherche de cours par préfixe de code ou par mots du nom.
+     */
+    public final static String SEARCH_COMMAND = "CHERCHER";
+
+    /**
+     * Commande d'inscription à plusieurs cours en une seule requête.
+     */
+    public final static String BATCH_REGISTER_COMMAND = "INSCRIRE_LOT";
+    private ArrayList<Course> courses;
+    private String session;
+    private String recherche;
+    private int pageRecherche;
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+
+    /**
+     * Point d'entrée de l'application JavaFX. Cette méthode est appelée au démarrage de l'application.
+     * Elle crée l'interface utilisateur, configure les actions des boutons et affiche la fenêtre principale.
+     * Le formulaire d'inscription n'est construit qu'après le premier rendu de la fenêtre, pour que la liste des
+     * cours apparaisse plus tôt au démarrage; les actions du formulaire ne sont configurées qu'ensuite.
+     * @param primaryStage L'objet Stage principal de l'application JavaFX.
+     */
+    @Override
+    public void start(Stage primaryStage) {
+        view = new View();
+        network = new NetworkService("localhost", 1337);
+
+        charger();
+        rechercher();
+        view.annuler.setOnAction((action) -> network.cancel());
+
+        primaryStage.setTitle("Inscription UDEM");
+        primaryStage.setResizable(false);
+        primaryStage.setScene(new Scene(view.root,600,400));
+        primaryStage.show();
+
+        // Construction du formulaire au deuxième pulse de JavaFX : le premier rend la fenêtre, alors qu'une tâche
+        // de Platform.runLater pourrait s'exécuter avant ce premier rendu
+        new AnimationTimer() {
+            private int pulses;
+
+            @Override
+            public void handle(long now) {
+                if (++pulses < 2) {
+                    return;
+                }
+                stop();
+                view.buildForm();
+                inscription();
+                view.envoyer.setDisable(pendingRequests > 0);
+            }
+        }.start();
+    }
+
+    /**
+     * Arrête le service réseau et ferme la connexion avec le serveur à la fermeture de l'application.
+     */
+    @Override
+    public void stop() {
+        network.shutdown();
+    }
+
+    /**
+     * Méthode pour charger les cours à partir du serveur en fonction de la session sélectionnée.
+     * Elle configure l'action du bouton "Charger" pour demander au serveur les cours en flux et les afficher dans le
+     * tableau page par page, dès leur réception : les premières lignes apparaissent sans attendre la fin de la
+     * liste. La liste gardée dans le cache du client est affichée immédiatement, et la demande porte sa version :
+     * si la liste n'a pas changé, le serveur ne la renvoie pas.
+     */
+    public void charger(){
+        // Lorsque l'utilisateur clique sur le bouton "charger"
+        view.charger.setOnAction((action) -> {
+            view.suivants.setDisable(true);
+            // Prendre la valeur de la session à partir du choiceBox
+            String sessionChoisie = view.choixSession.getValue();
+            session = sessionChoisie;
+            // Afficher tout de suite la liste du cache, remplacée si le serveur en envoie une nouvelle
+            ArrayList<Course> cached = courseCache.getCourses(sessionChoisie);
+            courses = cached != null ? cached : new ArrayList<>();
+            view.courses.setAll(courses);
+            ArrayList<Course> chargement = new ArrayList<>();
+            // Rajouter au tableau chaque page de cours dès sa réception, sur le thread de l'interface
+            track(network.streamCourses(sessionChoisie, courseCache.getVersion(sessionChoisie),
+                    page -> Platform.runLater(() -> {
+                        chargement.addAll(page.getCourses());
+                        if (page.getOffset() == 0) {
+                            // Première page d'une nouvelle liste : elle remplace d'un seul coup la liste du cache
+                            courses = chargement;
+                            view.courses.setAll(page.getCourses());
+                        } else {
+                            view.courses.addAll(page.getCourses());
+                        }
+                    }))).thenAcceptAsync(version -> {
+                        // Garder la nouvelle liste, reçue en entier, avec sa version
+                        if (courses == chargement) {
+                            courseCache.put(sessionChoisie, version, chargement);
+                        }
+                    }, Platform::runLater);
+        });
+    }
+
+    /**
+     * Méthode pour rechercher des cours de la session sélectionnée par début de code ou par mots du nom.
+     * Elle configure l'action du bouton "chercher", qui remplace le contenu du tableau par la première page de
+     * résultats, et celle du bouton "suivants", qui y ajoute la page suivante. Le serveur n'envoie qu'une page à la
+     * fois, plutôt que la liste complète des cours de la session.
+     */
+    public void rechercher() {
+        // Lorsque l'utilisateur clique sur le bouton "chercher" ou valide le champ de recherche
+        view.chercher.setOnAction((action) -> {
+            view.courses.clear();
+            session = view.choixSession.getValue();
+            recherche = view.rechercheTextField.getText().trim();
+            pageRecherche = 0;
+            chargerPageRecherche();
+        });
+        view.rechercheTextField.setOnAction(view.chercher.getOnAction());
+
+        // Lorsque l'utilisateur clique sur le bouton "suivants"
+        view.suivants.setOnAction((action) -> {
+            pageRecherche++;
+            chargerPageRecherche();
+        });
+    }
+
+    /**
+     * Demande au serveur la page courante des résultats de recherche et l'ajoute au tableau.
+     */
+    private void chargerPageRecherche() {
+        view.suivants.setDisable(true);
+        track(network.search(session, pageRecherche, recherche)).thenAcceptAsync(page -> {
+            view.courses.addAll(page.getCourses());
+            // Le bouton "suivants" n'est actif que s'il reste des résultats
+            view.suivants.setDisable(!page.hasNext());
+        }, Platform::runLater);
+    }
+
+    /**
+     * Méthode pour gérer l'inscription à un ou plusieurs cours. Elle configure l'action du bouton "Envoyer" pour
+     * envoyer au serveur, dans une seule requête, un formulaire d'inscription pour chaque cours sélectionné.
+     * Elle effectue également des vérifications sur les champs du formulaire avant d'envoyer les données au serveur.
+     */
+    public void inscription(){
+        // Lorsque l'utilisateur clique sur le bouton "envoyer"
+        view.envoyer.setOnAction((action) -> {
+            try{
+                // boolean true s'il n'y a aucune erreur dans le formulaire
+                boolean noError = true;
+                // Créer un tableau pour les erreurs
+                List<String> erreurs = new ArrayList<>();
+
+                // Vérifier si aucun cours n'est sélectionné (plusieurs cours peuvent l'être)
+                if (view.tableCourse.getSelectionModel().isEmpty()) {
+                    erreurs.add("Vous devez sélectionner un cours!");
+                }
+
+                // Vérifier si le champ prénom est vide
+                String prenom = view.prenomTextField.getText();
+                if (prenom.isEmpty()) {
+                    erreurs.add("Vous devez entrer votre prénom!");
+                }
+
+                String nom = view.nomTextField.getText();
+                // Vérifier si le champ nom est vide
+                if (nom.isEmpty()) {
+                    erreurs.add("Vous devez entrer votre nom!");
+                }
+
+                String email = view.emailTextField.getText();
+                // Vérifier si le champ email est vide ou ne respecte pas la structure d'un email
+                if (email.isEmpty() || !email.matches("[A-Za-z0-9._%+-]+@[A-Za-z0-9.-]+\\.[A-Z|a-z]{2,}")){
+                    erreurs.add("Le champ 'Email' est invalide!");
+                }
+
+                String matricule = view.matriculeTextField.getText();
+                // Vérifier si le champ matricule est vide ou n'est pas composé de 6 chiffres
+                if(matricule.isEmpty() || !matricule.matches("\\d{6}")){
+                    erreurs.add("Le champ 'Matricule' est invalide! (doit être composé de 6 chiffres)");
+                }
+
+                // Vérifier si la liste d'erreurs n'est pas vide
+                if (!erreurs.isEmpty()) {
+                    // Afficher les messages d'erreur
+                    Alert alert = new Alert(Alert.AlertType.ERROR);
+                    alert.setTitle("Error");
+                    alert.setHeaderText("Le formulaire est invalide");
+                    alert.setContentText(String.join("\n", erreurs));
+                    alert.showAndWait();
+                    // S'il y a des erreurs mettre le boolean à false
+                    noError = false;
+                }
+
+                // Vérifier s'il n'y a aucune erreur, si aucune erreur, on envoie le formulaire au serveur
+                if (noError) {
+                    // Créer un objet RegistrationForm avec les informations rempli par l'utilisateur pour chaque
+                    // cours sélectionné
+                    List<RegistrationForm> forms = new ArrayList<>();
+                    for (Course selectedCourse : view.tableCourse.getSelectionModel().getSelectedItems()) {
+                        Course coursInscrit = new Course(selectedCourse.getName(), selectedCourse.getCode(), session);
+                        forms.add(new RegistrationForm(prenom, nom, email, matricule, coursInscrit));
+                    }
+
+                    // Envoyer la commande et les formulaires au serveur, en affichant la position dans la salle
+                    // d'attente du serveur s'il y en a une, puis afficher le message reçu pour chaque cours
+                    track(network.register(forms, (position, wait) -> Platform.runLater(() ->
+                            view.attente.setText("Position " + position + ", environ " + (wait + 999) / 1000 + " s")
+                    ))).thenAcceptAsync(messages -> {
+                        Alert alertSuccess = new Alert(Alert.AlertType.INFORMATION);
+                        alertSuccess.setTitle("Message");
+                        alertSuccess.setHeaderText("Message");
+                        alertSuccess.setContentText(String.join("\n", messages));
+                        alertSuccess.showAndWait();
+                    }, Platform::runLater);
+                }
+            }catch (Exception e){
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Suit une requête en cours : l'indicateur de progression et le bouton "annuler" sont affichés et les boutons
+     * qui envoient une requête sont désactivés jusqu'à la fin de toutes les requêtes. Une erreur est affichée à
+     * l'utilisateur, sauf si la requête a été annulée.
+     * @param request La requête envoyée au NetworkService.
+     * @return La même requête, pour y enchaîner l'affichage de son résultat.
+     */
+    private <T> CompletableFuture<T> track(CompletableFuture<T> request) {
+        setBusy(++pendingRequests > 0);
+        request.whenCompleteAsync((result, error) -> {
+            setBusy(--pendingRequests > 0);
+            if (error != null) {
+                showError(error);
+            }
+        }, Platform::runLater);
+        return request;
+    }
+
+    /**
+     * Affiche l'indicateur de progression et désactive les boutons qui envoient une requête, ou l'inverse.
+     * @param busy true pendant une requête.
+     */
+    private void setBusy(boolean busy) {
+        view.progression.setVisible(busy);
+        view.annuler.setVisible(busy);
+        view.charger.setDisable(busy);
+        view.chercher.setDisable(busy);
+        if (view.envoyer != null) {
+            view.envoyer.setDisable(busy);
+        }
+        if (!busy) {
+            view.attente.setText("");
+        }
+    }
+
+    /**
+     * Affiche l'erreur d'une requête, sauf si elle a été annulée par l'utilisateur.
+     * @param error L'erreur de la requête.
+     */
+    private void showError(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof CancellationException) {
+            return;
+        }
+        Alert alert = new Alert(Alert.AlertType.ERROR);
+        alert.setTitle("Error");
+        alert.setHeaderText("La requête au serveur a échoué");
+        if (cause instanceof SocketTimeoutException) {
+            alert.setContentText("Le serveur ne répond pas. Veuillez réessayer.");
+        } else if (cause instanceof BinaryProtocol.RetryLaterException) {
+            alert.setContentText(cause.getMessage());
+        } else {
+            alert.setContentText("Le serveur est inaccessible: " + cause.getMessage());
+        }
+        alert.show();
+    }
+}
@@ -0,0 +1,266 @@
+package ClientFX;
+
+import server.BinaryProtocol;
+import server.CourseIndex;
+import server.models.RegistrationForm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Cette classe représente le service réseau du client JavaFX.
+ * Toutes les requêtes au serveur passent par un seul thread d'arrière-plan, qui les exécute l'une après l'autre
+ * sur une seule connexion, ouverte à la première requête et rouverte après une erreur : le thread de l'interface
+ * n'attend jamais le serveur. Chaque requête retourne un CompletableFuture, que l'interface complète sur son
+ * propre thread avec Platform::runLater comme exécuteur.
+ * Une réponse qui n'arrive pas dans le délai REQUEST_TIMEOUT fait échouer la requête, et cancel() annule la
+ * requête en cours en fermant la connexion. Le délai s'applique à chaque trame : une inscription peut attendre plus
+ * longtemps dans la salle d'attente du serveur, qui envoie sa position au moins toutes les
+ * WaitingRoom.UPDATE_INTERVAL millisecondes.
+ * Le serveur ferme une connexion inactive (voir Server.IDLE_TIMEOUT) : si la connexion se révèle fermée avant la
+ * première réponse à une requête, elle est rouverte, avec une nouvelle poignée de main, et la requête est renvoyée
+ * une seule fois.
+ */
+public class NetworkService {
+
+    /**
+     * Délai maximal d'ouverture de la connexion, en millisecondes.
+     */
+    public final static int CONNECT_TIMEOUT = 5000;
+
+    /**
+     * Délai maximal d'attente d'une trame du serveur, en millisecondes. Chaque position reçue de la salle d'attente
+     * relance le délai.
+     */
+    public final static int REQUEST_TIMEOUT = 10000;
+
+    private final String host;
+    private final int port;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "client-reseau");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile Socket socket;
+    private volatile CompletableFuture<?> current;
+    private DataInputStream dataInputStream;
+    private DataOutputStream dataOutputStream;
+    private int nextRequestId = 1;
+    private boolean responded;
+
+    /**
+     * Constructeur de la classe NetworkService.
+     * @param host L'adresse du serveur.
+     * @param port Le port du serveur.
+     */
+    public NetworkService(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Demande les cours d'une session en flux, seulement si la liste diffère de la version déjà gardée par le
+     * client. Chaque page reçue est transmise à onPage, dans le thread réseau; aucune page n'est reçue si la liste
+     * du client est à jour.
+     * @param session La session.
+     * @param version La version de la liste gardée par le client, ou CourseCache.NO_VERSION.
+     * @param onPage L'action appelée pour chaque page reçue.
+     * @return La version courante de la liste, connue après la dernière page.
+     */
+    public CompletableFuture<String> streamCourses(String session, String version,
+                                                   Consumer<CourseIndex.Page> onPage) {
+        return submit(() -> {
+            int requestId = send(ClientFX.STREAM_LOAD_COMMAND + " " + session + " " + ClientFX.IF_NOT_VERSION
+                    + " " + version);
+            BinaryProtocol.Frame check = awaitResponse(requestId);
+            if (check.isModified()) {
+                CourseIndex.Page page;
+                do {
+                    page = awaitResponse(requestId).getCoursePage();
+                    onPage.accept(page);
+                } while (page.hasNext());
+            }
+            return check.getVersion();
+        });
+    }
+
+    /**
+     * Recherche des cours d'une session par début de code ou par mots du nom.
+     * @param session La session.
+     * @param page Le numéro de la page de résultats, à partir de 0.
+     * @param text Le texte recherché.
+     * @return La page de résultats.
+     */
+    public CompletableFuture<CourseIndex.Page> search(String session, int page, String text) {
+        return submit(() -> {
+            int requestId = send(ClientFX.SEARCH_COMMAND + " " + session + " " + page + " " + text);
+            return awaitResponse(requestId).getCoursePage();
+        });
+    }
+
+    /**
+     * Envoie un formulaire d'inscription pour chaque cours choisi, en une seule requête.
+     * Si le serveur a ouvert sa salle d'attente, chaque position reçue pendant l'attente est transmise à onQueue,
+     * dans le thread réseau, avec le temps d'attente estimé en millisecondes.
+     * @param forms Les formulaires d'inscription.
+     * @param onQueue L'action appelée pour chaque position reçue.
+     * @return Le message du serveur pour chaque formulaire.
+     */
+    public CompletableFuture<List<String>> register(List<RegistrationForm> forms,
+                                                    BiConsumer<Integer, Integer> onQueue) {
+        return submit(() -> {
+            ensureConnected();
+            int requestId = nextRequestId++;
+            dataOutputStream.write(BinaryProtocol.encodeCommand(requestId, ClientFX.BATCH_REGISTER_COMMAND));
+            dataOutputStream.write(BinaryProtocol.encodeForms(requestId, forms));
+            dataOutputStream.flush();
+            BinaryProtocol.Frame frame = awaitResponse(requestId);
+            while (frame.isQueuePosition()) {
+                onQueue.accept(frame.getQueuePosition(), frame.getEstimatedWait());
+                frame = awaitResponse(requestId);
+            }
+            return frame.getMessages();
+        });
+    }
+
+    /**
+     * Annule la requête en cours, s'il y en a une. La connexion est fermée pour interrompre la lecture de la
+     * réponse; elle sera rouverte à la prochaine requête.
+     */
+    public void cancel() {
+        CompletableFuture<?> request = current;
+        if (request != null && request.cancel(false)) {
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Arrête le service et ferme la connexion.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+        closeQuietly();
+    }
+
+    /**
+     * Place une requête dans la file du thread réseau. Une requête annulée avant son tour n'est pas envoyée.
+     */
+    private <T> CompletableFuture<T> submit(Callable<T> request) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            current = result;
+            try {
+                result.complete(callWithReconnect(request));
+            } catch (Exception e) {
+                // La connexion est abandonnée, elle sera rouverte à la prochaine requête
+                closeQuietly();
+                if (!result.isCancelled()) {
+                    result.completeExceptionally(e);
+                }
+            } finally {
+                current = null;
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Exécute une requête dans le thread réseau. Si la connexion a été fermée par le serveur pendant qu'elle était
+     * inactive, l'écriture ou la première lecture échoue : la connexion est alors rouverte et la requête est
+     * renvoyée une seule fois. Une requête dont une réponse a déjà été reçue n'est jamais renvoyée.
+     */
+    private <T> T callWithReconnect(Callable<T> request) throws Exception {
+        responded = false;
+        try {
+            return request.call();
+        } catch (EOFException | SocketException e) {
+            if (responded || (current != null && current.isCancelled())) {
+                throw e;
+            }
+            closeQuietly();
+            return request.call();
+        }
+    }
+
+    /**
+     * Écrit et envoie une commande sur la connexion, ouverte au besoin.
+     * @return L'identifiant de la requête.
+     */
+    private int send(String line) throws IOException {
+        ensureConnected();
+        int requestId = nextRequestId++;
+        dataOutputStream.write(BinaryProtocol.encodeCommand(requestId, line));
+        dataOutputStream.flush();
+        return requestId;
+    }
+
+    /**
+     * Lit la réponse à une requête. Une seule requête est envoyée à la fois, la réponse reçue doit donc porter son
+     * identifiant. La lecture échoue si le serveur ne répond pas dans le délai REQUEST_TIMEOUT.
+     */
+    private BinaryProtocol.Frame awaitResponse(int requestId) throws IOException {
+        if (current != null && current.isCancelled()) {
+            throw new CancellationException();
+        }
+        BinaryProtocol.Frame frame = BinaryProtocol.readFrame(dataInputStream);
+        responded = true;
+        if (frame.getRequestId() != requestId) {
+            throw new ProtocolException("Réponse inattendue: " + frame.getRequestId());
+        }
+        return frame;
+    }
+
+    /**
+     * Ouvre la connexion avec le serveur si elle n'est pas déjà ouverte et effectue la poignée de main du
+     * protocole binaire.
+     */
+    private void ensureConnected() throws IOException {
+        if (socket != null && !socket.isClosed()) {
+            return;
+        }
+        Socket s = new Socket();
+        try {
+            s.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+            s.setSoTimeout(REQUEST_TIMEOUT);
+            dataOutputStream = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            dataInputStream = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            BinaryProtocol.writeHandshake(dataOutputStream);
+            BinaryProtocol.readHandshake(dataInputStream);
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+        socket = s;
+    }
+
+    private void closeQuietly() {
+        Socket s = socket;
+        if (s == null) {
+            return;
+        }
+        try {
+            s.close();
+        } catch (IOException e) {
+            // La connexion est déjà fermée
+        }
+    }
+}
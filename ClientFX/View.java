@@ -1,16 +1,25 @@
 package ClientFX;
 
+import javafx.animation.PauseTransition;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import javafx.collections.transformation.SortedList;
 import javafx.geometry.Insets;
 import javafx.geometry.Orientation;
 import javafx.geometry.Pos;
 import javafx.scene.Parent;
 import javafx.scene.control.*;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.*;
 import javafx.scene.text.Font;
 import javafx.scene.text.Text;
+import javafx.util.Duration;
 import server.models.Course;
 
+import java.util.Locale;
+import java.util.function.Predicate;
+
 /**
  * Cette classe représente l'interface utilisateur de l'application client_fx
  */
@@ -27,6 +36,43 @@ public class View extends Parent {
      * Bouton pour charger les cours de la session sélectionnée.
      */
     public Button charger;
+    /**
+     * Champ de texte pour rechercher un cours par début de code ou par mots du nom.
+     */
+    public TextField rechercheTextField;
+    /**
+     * Bouton pour rechercher les cours de la session sélectionnée.
+     */
+    public Button chercher;
+    /**
+     * Bouton pour ajouter au tableau la page suivante des résultats de recherche.
+     */
+    public Button suivants;
+    /**
+     * Indicateur affiché pendant qu'une requête au serveur est en cours.
+     */
+    public ProgressIndicator progression;
+    /**
+     * Bouton pour annuler la requête au serveur en cours.
+     */
+    public Button annuler;
+    /**
+     * Position de l'inscription en cours dans la salle d'attente du serveur, affichée pendant l'attente.
+     */
+    public Label attente;
+    /**
+     * Cours affichés dans le tableau, avant le filtre et le tri. Ils sont remplacés d'un seul coup avec setAll() ou
+     * complétés avec addAll(), pour ne produire qu'un seul changement de liste par mise à jour.
+     */
+    public final ObservableList<Course> courses = FXCollections.observableArrayList();
+    /**
+     * Champ de texte pour filtrer les cours affichés par code ou par nom, sans requête au serveur.
+     */
+    public TextField filtreTextField;
+    /**
+     * Délai d'attente après la dernière frappe dans le champ de filtre avant d'appliquer le filtre.
+     */
+    public final static Duration FILTER_DELAY = Duration.millis(200);
     /**
      * Tableau pour afficher les cours disponibles.
      */
@@ -51,10 +97,12 @@ public class View extends Parent {
      * Champ de texte pour entrer le matricule de l'étudiant.
      */
     public TextField matriculeTextField;
+    private final VBox right = new VBox();
 
     /**
      * Constructeur de la classe View.
-     * Initialise les éléments de l'interface utilisateur.
+     * Initialise la liste des cours et réserve la place du formulaire d'inscription, construit ensuite par
+     * buildForm() : la fenêtre peut s'afficher avant que le formulaire ne soit prêt.
      */
     public View() {
         //créer scene et root(qui va être HBox pour la partie gauche et droite)
@@ -65,7 +113,6 @@ public class View extends Parent {
         VBox left = new VBox();
         left.setMinWidth(halfWidth);
         left.setAlignment(Pos.TOP_CENTER);
-        VBox right = new VBox();
         right.setMinWidth(halfWidth);
         right.setSpacing(10);
         right.setAlignment(Pos.TOP_CENTER);
@@ -83,6 +130,21 @@ public class View extends Parent {
         titreCours.setFont(Font.font("Arial", 20));
         left.getChildren().add(titreCours);
 
+        //Créer la barre de recherche des cours de la session sélectionnée
+        HBox recherche = new HBox();
+        recherche.setAlignment(Pos.CENTER);
+        recherche.setSpacing(10);
+        recherche.setPadding(new Insets(10,10,0,10));
+
+        rechercheTextField = new TextField();
+        rechercheTextField.setPromptText("Code ou mots du nom");
+        chercher = new Button("chercher");
+        suivants = new Button("suivants");
+        suivants.setDisable(true);
+
+        recherche.getChildren().addAll(rechercheTextField, chercher, suivants);
+        left.getChildren().add(recherche);
+
         //Créer la partie qui affichera le tableau des cours dans la partie gauche
         VBox table = new VBox();
         table.setPadding(new Insets(10,10,10,10));
@@ -90,10 +152,10 @@ public class View extends Parent {
         //Créer le tableau avec le model Course
         tableCourse = new TableView<>();
         TableColumn<Course, String> codeColumn = new TableColumn<>("Code");
-        codeColumn.setCellValueFactory(new PropertyValueFactory<>("code"));
+        codeColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().getCode()));
 
         TableColumn<Course, String> courseColumn = new TableColumn<>("Cours");
-        courseColumn.setCellValueFactory(new PropertyValueFactory<>("name"));
+        courseColumn.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().getName()));
 
         //Définition de la cellFactory pour la colonne du code
         codeColumn.setCellFactory(column -> new TableCell<>() {
@@ -125,25 +187,62 @@ public class View extends Parent {
         tableCourse.getColumns().add(codeColumn);
         tableCourse.getColumns().add(courseColumn);
         tableCourse.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
-        tableCourse.setMaxHeight(300);
-
-        //Rajouter le tableau dans la partie gauche du programme
-        table.getChildren().add(tableCourse);
+        tableCourse.setMaxHeight(240);
+        // Toutes les lignes ont la même hauteur : le tableau ne crée des cellules que pour les lignes visibles, sans
+        // mesurer chaque ligne, même avec des dizaines de milliers de cours
+        tableCourse.setFixedCellSize(24);
+
+        //Relier le tableau aux cours par un filtre et un tri : seules les lignes retenues sont triées et affichées,
+        //et un clic sur l'en-tête d'une colonne trie sans toucher à la liste des cours
+        FilteredList<Course> filtered = new FilteredList<>(courses);
+        SortedList<Course> sorted = new SortedList<>(filtered);
+        sorted.comparatorProperty().bind(tableCourse.comparatorProperty());
+        tableCourse.setItems(sorted);
+
+        //Créer le champ de filtre, appliqué seulement après une courte pause dans la frappe
+        filtreTextField = new TextField();
+        filtreTextField.setPromptText("Filtrer les cours affichés");
+        PauseTransition filterPause = new PauseTransition(FILTER_DELAY);
+        filterPause.setOnFinished(event -> filtered.setPredicate(filterFor(filtreTextField.getText())));
+        filtreTextField.textProperty().addListener((observable, before, after) -> filterPause.playFromStart());
+        // Plusieurs cours peuvent être sélectionnés pour s'y inscrire en une seule fois
+        tableCourse.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
+
+        //Rajouter le tableau et son filtre dans la partie gauche du programme
+        table.setSpacing(5);
+        table.getChildren().addAll(tableCourse, filtreTextField);
         left.getChildren().add(table);
 
         //les boutons de la partie gauche, le choiceBox et le bouton "charger"
         HBox boutons = new HBox();
         boutons.setAlignment(Pos.CENTER);
-        boutons.setSpacing(40);
+        boutons.setSpacing(20);
 
         choixSession = new ChoiceBox<>();
         choixSession.getItems().addAll("Automne", "Hiver", "Ete");
         choixSession.setValue("Automne");
         charger = new Button("charger");
 
-        boutons.getChildren().addAll(choixSession, charger);
+        //l'indicateur de progression et le bouton "annuler", visibles seulement pendant une requête
+        progression = new ProgressIndicator();
+        progression.setMaxSize(20, 20);
+        progression.setVisible(false);
+        annuler = new Button("annuler");
+        annuler.setVisible(false);
+        attente = new Label();
+
+        boutons.getChildren().addAll(choixSession, charger, progression, annuler, attente);
         left.getChildren().add(boutons);
+    }
 
+    /**
+     * Construit le formulaire d'inscription dans la partie droite de la vue, s'il n'est pas déjà construit.
+     * Les champs du formulaire et le bouton "envoyer" sont null avant le premier appel.
+     */
+    public void buildForm() {
+        if (envoyer != null) {
+            return;
+        }
 
         //SECTION DROITE DE L'APPLICATION
         //Créer le titre pour la section droite qui est allouée au formulaire d'inscription
@@ -203,4 +302,18 @@ public class View extends Parent {
         envoyer = new Button("envoyer");
         right.getChildren().add(envoyer);
     }
+
+    /**
+     * Construit le filtre des cours dont le code ou le nom contient le texte spécifié, sans tenir compte de la casse.
+     * @param text Le texte du champ de filtre.
+     * @return Le filtre, ou null pour afficher tous les cours.
+     */
+    private static Predicate<Course> filterFor(String text) {
+        String query = text.trim().toLowerCase(Locale.ROOT);
+        if (query.isEmpty()) {
+            return null;
+        }
+        return course -> course.getCode().toLowerCase(Locale.ROOT).contains(query)
+                || course.getName().toLowerCase(Locale.ROOT).contains(query);
+    }
 }
@@ -0,0 +1,122 @@
+package server;
+
+/**
+ * Énumération Command qui représente les commandes connues du serveur et décode les lignes de commande reçues.
+ * Le décodage ne crée aucun objet : le premier mot de la ligne est comparé en place aux noms des commandes, et
+ * l'argument n'est qu'une position dans la ligne. Le nom d'une commande connue est toujours la même chaîne (la
+ * constante de Server), ce qui rend aussi immédiates les comparaisons faites ensuite par les EventHandlers.
+ * Seul l'argument, lorsqu'il est demandé sous forme de chaîne, et le nom d'une commande inconnue sont copiés.
+ */
+public enum Command {
+
+    /**
+     * Commande d'inscription, voir Server.REGISTER_COMMAND.
+     */
+    REGISTER(Server.REGISTER_COMMAND, true),
+
+    /**
+     * Commande d'inscription en lot, voir Server.BATCH_REGISTER_COMMAND.
+     */
+    BATCH_REGISTER(Server.BATCH_REGISTER_COMMAND, true),
+
+    /**
+     * Commande de chargement des cours, voir Server.LOAD_COMMAND.
+     */
+    LOAD(Server.LOAD_COMMAND, false),
+
+    /**
+     * Commande de chargement des cours en flux, voir Server.STREAM_LOAD_COMMAND.
+     */
+    STREAM_LOAD(Server.STREAM_LOAD_COMMAND, false),
+
+    /**
+     * Commande de recherche de cours, voir Server.SEARCH_COMMAND.
+     */
+    SEARCH(Server.SEARCH_COMMAND, false),
+
+    /**
+     * Commande des mesures du serveur, voir Server.METRICS_COMMAND.
+     */
+    METRICS(Server.METRICS_COMMAND, false),
+
+    /**
+     * Toute commande inconnue du serveur.
+     */
+    OTHER(ServerMetrics.OTHER_COMMAND, false);
+
+    private final static Command[] KNOWN = {REGISTER, BATCH_REGISTER, LOAD, STREAM_LOAD, SEARCH, METRICS};
+
+    private final String wireName;
+    private final boolean forms;
+
+    Command(String wireName, boolean forms) {
+        this.wireName = wireName;
+        this.forms = forms;
+    }
+
+    /**
+     * Décode la commande d'une ligne reçue du client, sans copier la ligne.
+     * @param line La ligne de commande, par exemple "CHARGER Automne".
+     * @return La commande, ou OTHER si le premier mot de la ligne n'est pas une commande connue.
+     */
+    public static Command decode(String line) {
+        int end = commandEnd(line);
+        for (Command command : KNOWN) {
+            String name = command.wireName;
+            if (name.length() == end && line.startsWith(name)) {
+                return command;
+            }
+        }
+        return OTHER;
+    }
+
+    /**
+     * Obtient la position du premier caractère de l'argument d'une ligne de commande.
+     * @param line La ligne de commande.
+     * @return La position qui suit le premier espace, ou la longueur de la ligne si elle n'a pas d'argument.
+     */
+    public static int argumentStart(String line) {
+        int end = commandEnd(line);
+        return end < line.length() ? end + 1 : end;
+    }
+
+    /**
+     * Obtient l'argument d'une ligne de commande : tout ce qui suit le premier espace.
+     * @param line La ligne de commande.
+     * @return L'argument, ou une chaîne vide si la ligne n'a pas d'argument.
+     */
+    public static String argument(String line) {
+        int start = argumentStart(line);
+        return start < line.length() ? line.substring(start) : "";
+    }
+
+    /**
+     * Obtient le nom d'une commande tel que reçu dans une ligne.
+     * @param line La ligne de commande dont cette commande a été décodée.
+     * @return Le nom de la commande, sans copie pour une commande connue.
+     */
+    public String commandName(String line) {
+        return this != OTHER ? wireName : line.substring(0, commandEnd(line));
+    }
+
+    /**
+     * Obtient le nom de la commande dans le protocole.
+     * @return Le nom de la commande, ou ServerMetrics.OTHER_COMMAND pour une commande inconnue.
+     */
+    public String getWireName() {
+        return wireName;
+    }
+
+    /**
+     * Indique si la commande est suivie d'un ou de plusieurs formulaires d'inscription dans la requête du client.
+     * @return true pour REGISTER et BATCH_REGISTER.
+     */
+    public boolean hasForms() {
+        return forms;
+    }
+
+    private static int commandEnd(String line) {
+        int space = line.indexOf(' ');
+        return space >= 0 ? space : line.length();
+    }
+}
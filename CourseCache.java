@@ -0,0 +1,153 @@
+package client;
+
+import server.models.Course;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * La classe CourseCache garde, côté client, la dernière liste des cours reçue pour chaque session avec sa version.
+ * Le client envoie cette version avec sa demande de chargement (voir Server.IF_NOT_VERSION) : si la liste n'a pas
+ * changé, le serveur ne renvoie que quelques octets et la liste gardée est réutilisée.
+ * Le cache est gardé en mémoire et, si un fichier est donné, aussi sur le disque pour les prochains lancements du
+ * client. Le fichier contient, pour chaque session, une ligne "#session<TAB>version" suivie d'une ligne
+ * "code<TAB>nom" par cours; un fichier illisible est simplement ignoré.
+ */
+public class CourseCache {
+
+    /**
+     * Version envoyée au serveur lorsque le client n'a aucune liste pour une session.
+     */
+    public final static String NO_VERSION = "-";
+
+    /**
+     * Propriété système qui donne le chemin du fichier du cache. Sans elle, le cache est gardé en mémoire seulement.
+     */
+    public final static String FILE_PROPERTY = "client.cache";
+
+    private final Path file;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Constructeur de la classe CourseCache. Le fichier, s'il existe, est lu immédiatement.
+     * @param file Le fichier du cache, ou null pour un cache en mémoire seulement.
+     */
+    public CourseCache(Path file) {
+        this.file = file;
+        if (file != null) {
+            load();
+        }
+    }
+
+    /**
+     * Crée le cache du client, dont le fichier est donné par la propriété système FILE_PROPERTY.
+     * @return Le cache du client.
+     */
+    public static CourseCache fromSystemProperty() {
+        String path = System.getProperty(FILE_PROPERTY);
+        return new CourseCache(path != null ? Paths.get(path) : null);
+    }
+
+    /**
+     * Obtient la version de la liste gardée pour une session.
+     * @param session La session.
+     * @return La version de la liste, ou NO_VERSION si aucune liste n'est gardée.
+     */
+    public synchronized String getVersion(String session) {
+        Entry entry = entries.get(session);
+        return entry != null ? entry.version : NO_VERSION;
+    }
+
+    /**
+     * Obtient la liste gardée pour une session.
+     * @param session La session.
+     * @return La liste des cours, ou null si aucune liste n'est gardée.
+     */
+    public synchronized ArrayList<Course> getCourses(String session) {
+        Entry entry = entries.get(session);
+        return entry != null ? entry.courses : null;
+    }
+
+    /**
+     * Garde la liste reçue pour une session et l'écrit dans le fichier du cache.
+     * @param session La session.
+     * @param version La version de la liste, donnée par le serveur.
+     * @param courses La liste des cours.
+     */
+    public synchronized void put(String session, String version, ArrayList<Course> courses) {
+        entries.put(session, new Entry(version, courses));
+        if (file != null) {
+            save();
+        }
+    }
+
+    private void load() {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String session = null;
+            Entry entry = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t");
+                if (line.startsWith("#") && parts.length == 2) {
+                    session = parts[0].substring(1);
+                    entry = new Entry(parts[1], new ArrayList<>());
+                    entries.put(session, entry);
+                } else if (entry != null && parts.length == 2) {
+                    entry.courses.add(new Course(parts[1], parts[0], session));
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // Premier lancement : le cache est vide
+        } catch (IOException e) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Écrit le cache dans un fichier temporaire, puis le renomme : un client interrompu ne laisse jamais un
+     * fichier à moitié écrit.
+     */
+    private void save() {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tmp = Files.createTempFile(parent, "cours", ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                    writer.write("#" + e.getKey() + "\t" + e.getValue().version);
+                    writer.newLine();
+                    for (Course course : e.getValue().courses) {
+                        writer.write(course.getCode() + "\t" + course.getName());
+                        writer.newLine();
+                    }
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Le cache reste valide en mémoire; il sera réécrit à la prochaine liste reçue
+        }
+    }
+
+    /**
+     * Liste gardée pour une session et sa version.
+     */
+    private static final class Entry {
+        private final String version;
+        private final ArrayList<Course> courses;
+
+        private Entry(String version, ArrayList<Course> courses) {
+            this.version = version;
+            this.courses = courses;
+        }
+    }
+}
@@ -0,0 +1,533 @@
+package server;
+
+import server.models.Course;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Classe CourseCatalog qui représente le catalogue des cours gardé en mémoire par le serveur.
+ * Le fichier des cours est lu une seule fois et les cours sont indexés par session, ce qui permet de répondre
+ * à une demande de chargement sans accéder au disque. Le catalogue est rechargé lorsque le fichier change : un
+ * nouvel index est construit à part, puis publié d'un seul coup (copie à l'écriture), de sorte qu'un lecteur voit
+ * toujours soit l'ancien catalogue complet, soit le nouveau. Une requête en cours garde la version qu'elle a lue.
+ * Avec watch(), un thread d'arrière-plan surveille le répertoire du fichier (WatchService) et recharge le
+ * catalogue lui-même : les lecteurs ne font plus que lire la version courante, sans jamais attendre le disque.
+ * Le thread attend que le fichier cesse de changer pendant SETTLE_DELAY avant de le lire, et un fichier invalide
+ * (vide, ou dont la dernière ligne est incomplète ou ne se termine pas par un saut de ligne, comme un fichier en
+ * cours d'écriture) est refusé : le catalogue courant est alors conservé. Pour un remplacement sûr, le nouveau
+ * fichier peut aussi être écrit à côté, puis renommé par-dessus l'ancien.
+ * Une quatrième colonne facultative du fichier donne la capacité d'un cours, c'est-à-dire son nombre maximal
+ * d'inscriptions; un cours sans capacité n'a pas de limite.
+ * Le fichier doit être encodé en UTF-8 : un fichier Latin-1 ou Windows-1252 est tout de même chargé, mais chacun de
+ * ses caractères accentués est remplacé par U+FFFD dans les noms des cours.
+ * Chaque version du catalogue construit au premier besoin l'index de recherche de chaque session (voir CourseIndex).
+ */
+public class CourseCatalog {
+
+    /**
+     * Chemin par défaut du fichier des cours.
+     */
+    public final static String COURSES_FILE = "src/main/java/server/data/cours.txt";
+
+    /**
+     * Propriété système qui donne le chemin du fichier des cours du serveur. Sans elle, COURSES_FILE est lu à partir
+     * du répertoire courant.
+     */
+    public final static String FILE_PROPERTY = "server.courses.file";
+
+    /**
+     * Délai minimal par défaut entre deux vérifications de la date de modification du fichier, en millisecondes.
+     */
+    public final static long DEFAULT_CHECK_INTERVAL = 1000;
+
+    /**
+     * Délai, en millisecondes, pendant lequel le fichier ne doit plus changer avant d'être relu par le thread de
+     * surveillance.
+     */
+    public final static long SETTLE_DELAY = 200;
+
+    /**
+     * Capacité d'un cours sans limite d'inscriptions.
+     */
+    public final static int UNLIMITED = -1;
+
+    private final Path file;
+    private final long checkInterval;
+    private final AtomicLong nextCheck = new AtomicLong();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong rejectedReloads = new AtomicLong();
+    private volatile long lastReloadDuration;
+    private volatile Thread watcher;
+
+    /**
+     * Constructeur de la classe CourseCatalog. Le fichier est chargé immédiatement.
+     * @param file Le fichier des cours, une ligne par cours : code, nom, session et capacité facultative séparés
+     * par des tabulations.
+     */
+    public CourseCatalog(Path file) {
+        this(file, DEFAULT_CHECK_INTERVAL);
+    }
+
+    /**
+     * Constructeur de la classe CourseCatalog. Le fichier est chargé immédiatement.
+     * @param file Le fichier des cours, une ligne par cours : code, nom, session et capacité facultative séparés
+     * par des tabulations.
+     * @param checkInterval Le délai minimal entre deux vérifications de la date de modification, en millisecondes.
+     */
+    public CourseCatalog(Path file, long checkInterval) {
+        this.file = file;
+        this.checkInterval = checkInterval;
+        reload();
+    }
+
+    /**
+     * Obtient le chemin du fichier des cours du serveur, donné par la propriété système FILE_PROPERTY.
+     * @return Le fichier des cours, ou COURSES_FILE si la propriété n'est pas fixée.
+     */
+    public static Path coursesFile() {
+        return Paths.get(System.getProperty(FILE_PROPERTY, COURSES_FILE));
+    }
+
+    /**
+     * Obtient la liste des cours d'une session.
+     * La liste retournée est partagée entre tous les appelants et ne doit pas être modifiée.
+     * @param session La session recherchée, sans tenir compte de la casse.
+     * @return La liste des cours de la session, vide si la session n'existe pas.
+     */
+    public ArrayList<Course> getCourses(String session) {
+        return getSnapshot().getCourses(session);
+    }
+
+    /**
+     * Obtient la capacité d'un cours.
+     * @param session La session du cours, sans tenir compte de la casse.
+     * @param code Le code du cours.
+     * @return Le nombre maximal d'inscriptions au cours, ou UNLIMITED s'il n'y a pas de limite.
+     */
+    public int getCapacity(String session, String code) {
+        return getSnapshot().getCapacity(session, code);
+    }
+
+    /**
+     * Indique si un cours est offert dans une session du catalogue.
+     * @param session La session du cours, sans tenir compte de la casse.
+     * @param code Le code du cours.
+     * @return true si le cours est dans le catalogue.
+     */
+    public boolean contains(String session, String code) {
+        return getSnapshot().contains(session, code);
+    }
+
+    /**
+     * Obtient la version courante du catalogue.
+     * Sans thread de surveillance (voir watch()), le fichier est d'abord vérifié : la vérification n'accède au
+     * disque qu'au plus une fois par intervalle, et par un seul thread.
+     * @return Le catalogue courant.
+     */
+    public Snapshot getSnapshot() {
+        if (watcher != null) {
+            return snapshot;
+        }
+        long now = System.currentTimeMillis();
+        long next = nextCheck.get();
+        if (now >= next && nextCheck.compareAndSet(next, now + checkInterval)) {
+            reloadIfModified();
+        }
+        return snapshot;
+    }
+
+    private void reloadIfModified() {
+        if (isModified()) {
+            reload();
+        }
+    }
+
+    /**
+     * Indique si la date de modification ou la taille du fichier diffère de celles du catalogue courant.
+     * @return true si le fichier a changé, false s'il est inchangé ou inaccessible.
+     */
+    private boolean isModified() {
+        try {
+            Snapshot current = snapshot;
+            return Files.getLastModifiedTime(file).toMillis() != current.lastModified
+                    || Files.size(file) != current.fileSize;
+        } catch (IOException e) {
+            // Le fichier est inaccessible : on garde le catalogue courant
+            return false;
+        }
+    }
+
+    /**
+     * Relit le fichier des cours et publie le nouveau catalogue.
+     * En cas d'erreur de lecture, ou si le fichier est invalide, le catalogue courant est conservé.
+     * @return true si le nouveau catalogue a été publié.
+     */
+    public synchronized boolean reload() {
+        long start = System.nanoTime();
+        try {
+            long lastModified = Files.getLastModifiedTime(file).toMillis();
+            long fileSize = Files.size(file);
+            Map<String, Integer> capacities = new HashMap<>();
+            snapshot = new Snapshot(load(file, capacities, snapshot != Snapshot.EMPTY), capacities, lastModified,
+                    fileSize);
+            lastReloadDuration = System.nanoTime() - start;
+            reloads.incrementAndGet();
+            return true;
+        } catch (NoSuchFileException e) {
+            ServerLog.get().warn("Fichier des cours introuvable: " + file);
+        } catch (InvalidCatalogException e) {
+            ServerLog.get().warn(e.getMessage() + ", catalogue courant conservé: " + file);
+        } catch (IOException e) {
+            ServerLog.get().error("Erreur lors de la lecture du fichier des cours " + file, e);
+        }
+        rejectedReloads.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Démarre le thread de surveillance du fichier des cours, s'il n'est pas déjà démarré.
+     * Si le système de fichiers ne permet pas la surveillance, le fichier reste vérifié par getSnapshot().
+     */
+    public synchronized void watch() {
+        if (watcher != null) {
+            return;
+        }
+        Path directory = file.toAbsolutePath().getParent();
+        WatchService service;
+        try {
+            service = directory.getFileSystem().newWatchService();
+            directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException e) {
+            ServerLog.get().warn("Surveillance du fichier des cours impossible, vérification périodique: "
+                    + e.getMessage());
+            return;
+        }
+        Thread t = new Thread(() -> watchLoop(service), "catalog-watcher");
+        t.setDaemon(true);
+        watcher = t;
+        t.start();
+    }
+
+    /**
+     * Arrête le thread de surveillance du fichier des cours, s'il est démarré.
+     */
+    public synchronized void close() {
+        Thread t = watcher;
+        if (t != null) {
+            watcher = null;
+            t.interrupt();
+        }
+    }
+
+    /**
+     * Boucle du thread de surveillance : attend un changement du fichier des cours, attend qu'il cesse de changer,
+     * puis recharge le catalogue. Le fichier est aussi vérifié à chaque intervalle sans événement, au cas où un
+     * changement n'aurait pas été signalé (par exemple sur un système de fichiers réseau).
+     */
+    private void watchLoop(WatchService service) {
+        Path name = file.getFileName();
+        // État du dernier fichier refusé, qui n'est pas relu tant qu'il ne change pas
+        long[] rejected = null;
+        try (WatchService s = service) {
+            while (watcher == Thread.currentThread()) {
+                WatchKey key = s.poll(checkInterval, TimeUnit.MILLISECONDS);
+                boolean changed = key == null;
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context());
+                    }
+                    key.reset();
+                }
+                if (changed && isModified() && !Arrays.equals(fileState(), rejected)) {
+                    long[] state = awaitSettled();
+                    rejected = reload() ? null : state;
+                }
+            }
+        } catch (InterruptedException e) {
+            // Arrêt demandé par close()
+        } catch (IOException e) {
+            ServerLog.get().error("Erreur lors de la surveillance du fichier des cours " + file, e);
+        }
+    }
+
+    /**
+     * Attend que la date de modification et la taille du fichier restent les mêmes pendant SETTLE_DELAY.
+     * @return La date de modification et la taille du fichier.
+     */
+    private long[] awaitSettled() throws InterruptedException {
+        long[] previous = fileState();
+        while (true) {
+            Thread.sleep(SETTLE_DELAY);
+            long[] current = fileState();
+            if (Arrays.equals(current, previous)) {
+                return current;
+            }
+            previous = current;
+        }
+    }
+
+    private long[] fileState() {
+        try {
+            return new long[] {Files.getLastModifiedTime(file).toMillis(), Files.size(file)};
+        } catch (IOException e) {
+            return new long[] {-1, -1};
+        }
+    }
+
+    /**
+     * Obtient le nombre de rechargements réussis du catalogue, y compris le chargement initial.
+     * @return Le nombre de rechargements.
+     */
+    public long getReloads() {
+        return reloads.get();
+    }
+
+    /**
+     * Obtient le nombre de rechargements refusés, parce que le fichier était inaccessible ou invalide.
+     * @return Le nombre de rechargements refusés.
+     */
+    public long getRejectedReloads() {
+        return rejectedReloads.get();
+    }
+
+    /**
+     * Obtient la durée du dernier rechargement réussi : lecture, validation et indexation du fichier.
+     * @return La durée du rechargement, en nanosecondes.
+     */
+    public long getLastReloadDuration() {
+        return lastReloadDuration;
+    }
+
+    /**
+     * Résume l'état du catalogue sur une ligne.
+     * @return Le résumé de l'état.
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "cours=%d rechargements=%d refusés=%d dernier=%.1fms",
+                snapshot.getCourseCount(), getReloads(), getRejectedReloads(), getLastReloadDuration() / 1e6);
+    }
+
+    /**
+     * Lit le fichier des cours et les regroupe par session.
+     * Le fichier est décodé en UTF-8; un octet invalide est remplacé par U+FFFD plutôt que de faire échouer la lecture.
+     * Les lignes incomplètes sont ignorées; une capacité absente ou invalide signifie que le cours n'a pas de limite.
+     * Le fichier est toutefois refusé s'il ne contient aucun cours, ou si sa dernière ligne est incomplète : c'est
+     * ce qu'on lit d'un fichier en cours d'écriture.
+     * @param requireNewline true pour refuser aussi un fichier dont le dernier octet n'est pas un saut de ligne :
+     * un fichier en cours d'écriture peut être coupé au milieu d'une ligne qui a déjà ses trois colonnes. Le premier
+     * chargement accepte ce fichier, pour que le serveur ne démarre pas sans cours à cause d'un fichier écrit sans
+     * saut de ligne final; s'il était en cours d'écriture, il est rechargé une fois écrit.
+     * @throws IOException En cas d'erreur de lecture.
+     * @throws InvalidCatalogException Si le fichier est invalide.
+     */
+    private static Map<String, ArrayList<Course>> load(Path file, Map<String, Integer> capacities,
+                                                       boolean requireNewline) throws IOException {
+        // Le fichier est lu d'un seul coup : son dernier octet et ses lignes viennent du même contenu
+        byte[] content = Files.readAllBytes(file);
+        if (requireNewline && content.length > 0 && content[content.length - 1] != '\n') {
+            throw new InvalidCatalogException("Fichier des cours invalide: dernière ligne sans saut de ligne");
+        }
+        Map<String, ArrayList<Course>> bySession = new HashMap<>();
+        boolean incomplete = false;
+        // Un octet invalide en UTF-8 (fichier Latin-1 ou Windows-1252) est remplacé par U+FFFD au lieu de faire échouer
+        // la lecture, ce qui laisserait le serveur sans cours
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content),
+                StandardCharsets.UTF_8.newDecoder()
+                        .onMalformedInput(CodingErrorAction.REPLACE)
+                        .onUnmappableCharacter(CodingErrorAction.REPLACE)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                String[] parts = line.split("\t");
+                incomplete = parts.length < 3;
+                if (incomplete) {
+                    continue;
+                }
+                String code = parts[0];
+                String name = parts[1];
+                String session = parts[2];
+                bySession.computeIfAbsent(session, s -> new ArrayList<>()).add(new Course(name, code, session));
+                // Chaque cours a une entrée, UNLIMITED s'il n'a pas de capacité : elle sert aussi à savoir s'il existe
+                String key = courseKey(session, code);
+                capacities.putIfAbsent(key, UNLIMITED);
+                if (parts.length >= 4) {
+                    try {
+                        capacities.put(key, Math.max(0, Integer.parseInt(parts[3].trim())));
+                    } catch (NumberFormatException e) {
+                        // Capacité invalide : le cours reste sans limite
+                    }
+                }
+            }
+        }
+        if (bySession.isEmpty() || incomplete) {
+            throw new InvalidCatalogException("Fichier des cours invalide: " + (incomplete ? "dernière ligne incomplète"
+                    : "aucun cours"));
+        }
+        for (ArrayList<Course> courses : bySession.values()) {
+            courses.trimToSize();
+        }
+        return bySession;
+    }
+
+    /**
+     * Construit la clé d'un cours : sa session, sans tenir compte de la casse, et son code.
+     * @param session La session du cours.
+     * @param code Le code du cours.
+     * @return La clé du cours.
+     */
+    static String courseKey(String session, String code) {
+        return session.toLowerCase(Locale.ROOT) + "\t" + code;
+    }
+
+    /**
+     * Exception levée lorsque le fichier des cours est lisible, mais invalide.
+     */
+    public static final class InvalidCatalogException extends IOException {
+        private final static long serialVersionUID = 1L;
+
+        /**
+         * Constructeur de la classe InvalidCatalogException.
+         * @param message La raison du refus du fichier.
+         */
+        public InvalidCatalogException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Classe Snapshot qui représente une version immuable du catalogue.
+     */
+    public static final class Snapshot {
+        private final static Snapshot EMPTY = new Snapshot(Collections.emptyMap(), Collections.emptyMap(), -1, -1);
+
+        private final Map<String, ArrayList<Course>> bySession;
+        private final Map<String, ArrayList<Course>> bySessionLowerCase;
+        private final Map<String, Integer> capacities;
+        private final ConcurrentHashMap<String, CourseIndex> indexes = new ConcurrentHashMap<>();
+        private final boolean exactLookup;
+        private final long lastModified;
+        private final long fileSize;
+        private final int courseCount;
+
+        private Snapshot(Map<String, ArrayList<Course>> bySession, Map<String, Integer> capacities, long lastModified,
+                         long fileSize) {
+            this.bySession = bySession;
+            this.capacities = capacities;
+            this.bySessionLowerCase = new HashMap<>();
+            for (Map.Entry<String, ArrayList<Course>> entry : bySession.entrySet()) {
+                bySessionLowerCase.merge(entry.getKey().toLowerCase(Locale.ROOT), entry.getValue(), (a, b) -> {
+                    ArrayList<Course> merged = new ArrayList<>(a);
+                    merged.addAll(b);
+                    return merged;
+                });
+            }
+            // Si deux sessions ne diffèrent que par la casse, seule la recherche sans casse regroupe leurs cours
+            this.exactLookup = bySessionLowerCase.size() == bySession.size();
+            this.lastModified = lastModified;
+            this.fileSize = fileSize;
+            int count = 0;
+            for (ArrayList<Course> courses : bySession.values()) {
+                count += courses.size();
+            }
+            this.courseCount = count;
+        }
+
+        /**
+         * Obtient la liste des cours d'une session.
+         * La session est d'abord cherchée telle quelle, puis sans tenir compte de la casse.
+         * @param session La session recherchée.
+         * @return La liste partagée des cours de la session, vide si la session n'existe pas.
+         */
+        public ArrayList<Course> getCourses(String session) {
+            ArrayList<Course> courses = exactLookup ? bySession.get(session) : null;
+            if (courses == null) {
+                courses = bySessionLowerCase.get(session.toLowerCase(Locale.ROOT));
+            }
+            return courses != null ? courses : new ArrayList<>();
+        }
+
+        /**
+         * Obtient l'index de recherche des cours d'une session, construit à la première recherche dans cette
+         * version du catalogue. Les sessions inconnues ne sont pas gardées, pour que les index restent bornés par
+         * le catalogue.
+         * @param session La session recherchée, sans tenir compte de la casse.
+         * @return L'index des cours de la session.
+         */
+        public CourseIndex getIndex(String session) {
+            String key = session.toLowerCase(Locale.ROOT);
+            CourseIndex index = indexes.get(key);
+            if (index == null) {
+                ArrayList<Course> courses = getCourses(session);
+                index = new CourseIndex(courses);
+                if (!courses.isEmpty()) {
+                    CourseIndex previous = indexes.putIfAbsent(key, index);
+                    index = previous != null ? previous : index;
+                }
+            }
+            return index;
+        }
+
+        /**
+         * Obtient la capacité d'un cours.
+         * @param session La session du cours, sans tenir compte de la casse.
+         * @param code Le code du cours.
+         * @return Le nombre maximal d'inscriptions au cours, ou UNLIMITED s'il n'y a pas de limite.
+         */
+        public int getCapacity(String session, String code) {
+            Integer capacity = capacities.get(courseKey(session, code));
+            return capacity != null ? capacity : UNLIMITED;
+        }
+
+        /**
+         * Indique si un cours est offert dans une session de cette version du catalogue.
+         * @param session La session du cours, sans tenir compte de la casse.
+         * @param code Le code du cours.
+         * @return true si le cours est dans le catalogue.
+         */
+        public boolean contains(String session, String code) {
+            return capacities.containsKey(courseKey(session, code));
+        }
+
+        /**
+         * Obtient la date de modification du fichier à partir duquel ce catalogue a été construit.
+         * @return La date de modification, en millisecondes.
+         */
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        /**
+         * Obtient le nombre de cours de ce catalogue, toutes sessions confondues.
+         * @return Le nombre de cours.
+         */
+        public int getCourseCount() {
+            return courseCount;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package server;
+
+import server.models.Course;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Classe CourseIndex qui représente l'index de recherche des cours d'une session, construit une seule fois par
+ * version du catalogue (voir CourseCatalog.Snapshot.getIndex()).
+ * Les cours sont triés par code. Un arbre préfixe (trie) sur les codes associe à chaque nœud l'intervalle de ce
+ * tableau trié qui contient tous les codes commençant par ce préfixe : une recherche par préfixe ne parcourt que
+ * les caractères du préfixe, et une page de résultats est une simple tranche du tableau.
+ * Un index inversé associe chaque mot des noms de cours, sans casse ni accents, aux positions des cours qui le
+ * contiennent; les mots sont triés, ce qui permet de traiter chaque mot de la requête comme un préfixe.
+ */
+public final class CourseIndex {
+    private final Course[] courses;
+    private final Node root = new Node();
+    private final String[] tokens;
+    private final int[][] postings;
+
+    /**
+     * Constructeur de la classe CourseIndex.
+     * @param sessionCourses Les cours d'une session.
+     */
+    public CourseIndex(List<Course> sessionCourses) {
+        this.courses = sessionCourses.toArray(new Course[0]);
+        Arrays.sort(courses, (a, b) -> normalize(a.getCode()).compareTo(normalize(b.getCode())));
+
+        Map<String, List<Integer>> byToken = new TreeMap<>();
+        for (int i = 0; i < courses.length; i++) {
+            root.insert(normalize(courses[i].getCode()), i);
+            for (String token : tokenize(courses[i].getName())) {
+                List<Integer> ids = byToken.computeIfAbsent(token, t -> new ArrayList<>());
+                // Les cours sont parcourus dans l'ordre : une liste ne contient un cours qu'une seule fois
+                if (ids.isEmpty() || ids.get(ids.size() - 1) != i) {
+                    ids.add(i);
+                }
+            }
+        }
+        this.tokens = byToken.keySet().toArray(new String[0]);
+        this.postings = new int[tokens.length][];
+        int t = 0;
+        for (List<Integer> ids : byToken.values()) {
+            postings[t++] = ids.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Obtient le nombre de cours indexés.
+     * @return Le nombre de cours de la session.
+     */
+    public int size() {
+        return courses.length;
+    }
+
+    /**
+     * Recherche des cours par préfixe de code ou par mots du nom.
+     * Une requête d'un seul mot est d'abord cherchée comme préfixe de code (par exemple "IFT2"); si aucun code ne
+     * correspond, ou si la requête contient plusieurs mots, les cours retenus sont ceux dont le nom contient un mot
+     * commençant par chacun des mots de la requête. Une requête vide retourne tous les cours. Les résultats sont
+     * triés par code.
+     * @param query Le texte recherché, sans tenir compte de la casse ni des accents.
+     * @param offset La position du premier résultat retourné.
+     * @param limit Le nombre maximal de résultats retournés.
+     * @return La page de résultats.
+     */
+    public Page search(String query, int offset, int limit) {
+        String[] words = tokenize(query);
+        if (words.length == 0) {
+            return page(0, courses.length, offset, limit);
+        }
+        if (words.length == 1 && query.trim().indexOf(' ') < 0) {
+            Node node = root.find(normalize(query.trim()));
+            if (node != null) {
+                return page(node.first, node.count, offset, limit);
+            }
+        }
+        int[] ids = null;
+        for (String word : words) {
+            int[] matches = prefixPostings(word);
+            ids = ids == null ? matches : intersect(ids, matches);
+            if (ids.length == 0) {
+                break;
+            }
+        }
+        int from = Math.max(0, Math.min(offset, ids.length));
+        int to = Math.min(ids.length, from + Math.max(0, limit));
+        ArrayList<Course> results = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            results.add(courses[ids[i]]);
+        }
+        return new Page(ids.length, from, results);
+    }
+
+    private Page page(int first, int count, int offset, int limit) {
+        int from = Math.max(0, Math.min(offset, count));
+        int to = Math.min(count, from + Math.max(0, limit));
+        return new Page(count, from, new ArrayList<>(Arrays.asList(courses).subList(first + from, first + to)));
+    }
+
+    /**
+     * Réunit les positions des cours dont le nom contient un mot commençant par le préfixe spécifié.
+     */
+    private int[] prefixPostings(String prefix) {
+        int from = Arrays.binarySearch(tokens, prefix);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        int to = from;
+        while (to < tokens.length && tokens[to].startsWith(prefix)) {
+            to++;
+        }
+        if (to - from == 1) {
+            return postings[from];
+        }
+        boolean[] seen = new boolean[courses.length];
+        int n = 0;
+        for (int t = from; t < to; t++) {
+            for (int id : postings[t]) {
+                if (!seen[id]) {
+                    seen[id] = true;
+                    n++;
+                }
+            }
+        }
+        int[] ids = new int[n];
+        int i = 0;
+        for (int id = 0; id < seen.length && i < n; id++) {
+            if (seen[id]) {
+                ids[i++] = id;
+            }
+        }
+        return ids;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[n++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Met un texte en minuscules et retire ses accents.
+     */
+    private static String normalize(String text) {
+        String lower = text.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lower.length(); i++) {
+            if (lower.charAt(i) > 0x7f) {
+                return Normalizer.normalize(lower, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+            }
+        }
+        return lower;
+    }
+
+    /**
+     * Découpe un texte en mots normalisés, séparés par tout caractère autre qu'une lettre ou un chiffre.
+     */
+    private static String[] tokenize(String text) {
+        String normalized = normalize(text).trim();
+        if (normalized.isEmpty()) {
+            return new String[0];
+        }
+        return Arrays.stream(normalized.split("[^\\p{L}\\p{N}]+")).filter(s -> !s.isEmpty()).toArray(String[]::new);
+    }
+
+    /**
+     * Nœud de l'arbre préfixe des codes. Les codes sont insérés dans l'ordre du tableau trié : les enfants d'un
+     * nœud sont donc créés dans l'ordre de leurs caractères, et les cours de son sous-arbre forment l'intervalle
+     * [first, first + count) du tableau.
+     */
+    private static final class Node {
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+        private int first = -1;
+        private int count;
+
+        private void insert(String code, int position) {
+            Node node = this;
+            node.add(position);
+            for (int i = 0; i < code.length(); i++) {
+                node = node.child(code.charAt(i));
+                node.add(position);
+            }
+        }
+
+        private void add(int position) {
+            if (first < 0) {
+                first = position;
+            }
+            count++;
+        }
+
+        private Node child(char c) {
+            int last = keys.length - 1;
+            if (last >= 0 && keys[last] == c) {
+                return children[last];
+            }
+            keys = Arrays.copyOf(keys, keys.length + 1);
+            children = Arrays.copyOf(children, children.length + 1);
+            keys[last + 1] = c;
+            children[last + 1] = new Node();
+            return children[last + 1];
+        }
+
+        private Node find(String prefix) {
+            Node node = this;
+            for (int i = 0; i < prefix.length() && node != null; i++) {
+                int k = Arrays.binarySearch(node.keys, prefix.charAt(i));
+                node = k >= 0 ? node.children[k] : null;
+            }
+            return node;
+        }
+    }
+
+    /**
+     * Classe Page qui représente une page de résultats de recherche.
+     */
+    public static final class Page {
+
+        /**
+         * Page vide, sans résultat.
+         */
+        public final static Page EMPTY = new Page(0, 0, new ArrayList<>());
+
+        private final int total;
+        private final int offset;
+        private final ArrayList<Course> courses;
+
+        /**
+         * Constructeur de la classe Page.
+         * @param total Le nombre total de résultats de la recherche.
+         * @param offset La position du premier résultat de la page.
+         * @param courses Les cours de la page.
+         */
+        public Page(int total, int offset, ArrayList<Course> courses) {
+            this.total = total;
+            this.offset = offset;
+            this.courses = courses;
+        }
+
+        /**
+         * Obtient le nombre total de résultats de la recherche, toutes pages confondues.
+         * @return Le nombre total de résultats.
+         */
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * Obtient la position du premier résultat de la page.
+         * @return La position du premier résultat.
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        /**
+         * Obtient les cours de la page.
+         * @return Les cours de la page, triés par code.
+         */
+        public ArrayList<Course> getCourses() {
+            return courses;
+        }
+
+        /**
+         * Indique s'il reste des résultats après cette page.
+         * @return true s'il existe une page suivante.
+         */
+        public boolean hasNext() {
+            return offset + courses.size() < total;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package server;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Classe CourseSeats qui représente les places occupées dans chaque cours.
+ * Chaque cours a son propre compteur atomique : une place est réservée par compare-and-set, sans verrou global,
+ * de sorte que des centaines d'inscriptions simultanées au même cours ne bloquent ni les autres cours ni les
+ * autres threads. Un compteur ne dépasse jamais la capacité lue dans le catalogue au moment de la réservation.
+ * Le compteur d'un cours est créé à sa première utilisation, à partir des inscriptions déjà enregistrées.
+ */
+public class CourseSeats {
+    private final CourseCatalog catalog;
+    private final RegistrationStore store;
+    private final ConcurrentHashMap<String, AtomicInteger> taken = new ConcurrentHashMap<>();
+
+    /**
+     * Constructeur de la classe CourseSeats.
+     * @param catalog Le catalogue qui donne la capacité des cours.
+     * @param store Les inscriptions déjà enregistrées, qui occupent déjà des places.
+     */
+    public CourseSeats(CourseCatalog catalog, RegistrationStore store) {
+        this.catalog = catalog;
+        this.store = store;
+    }
+
+    /**
+     * Réserve une place dans un cours, s'il en reste.
+     * @param session La session du cours, sans tenir compte de la casse.
+     * @param code Le code du cours.
+     * @return true si une place a été réservée, false si le cours est complet.
+     */
+    public boolean tryReserve(String session, String code) {
+        int capacity = catalog.getCapacity(session, code);
+        AtomicInteger seats = seats(session, code);
+        while (true) {
+            int current = seats.get();
+            if (capacity != CourseCatalog.UNLIMITED && current >= capacity) {
+                return false;
+            }
+            if (seats.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Libère une place réservée par tryReserve() pour une inscription qui n'a finalement pas été enregistrée.
+     * @param session La session du cours, sans tenir compte de la casse.
+     * @param code Le code du cours.
+     */
+    public void release(String session, String code) {
+        seats(session, code).decrementAndGet();
+    }
+
+    /**
+     * Obtient le nombre de places occupées ou réservées dans un cours.
+     * @param session La session du cours, sans tenir compte de la casse.
+     * @param code Le code du cours.
+     * @return Le nombre de places prises.
+     */
+    public int getTaken(String session, String code) {
+        return seats(session, code).get();
+    }
+
+    private AtomicInteger seats(String session, String code) {
+        String key = CourseCatalog.courseKey(session, code);
+        AtomicInteger seats = taken.get(key);
+        if (seats == null) {
+            seats = taken.computeIfAbsent(key, k -> new AtomicInteger(store.count(session, code)));
+        }
+        return seats;
+    }
+}
@@ -0,0 +1,111 @@
+package server;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Classe LatencyHistogram qui représente un histogramme de latences log-linéaire, partagé sans verrou entre threads.
+ * Chaque puissance de deux est découpée en SUB_BUCKETS intervalles égaux, ce qui donne une précision relative
+ * d'environ 3 % sur toute l'étendue des valeurs avec une mémoire fixe : enregistrer une mesure ne coûte que
+ * quelques incréments atomiques, sans allocation.
+ */
+public final class LatencyHistogram {
+    private final static int SUB_BITS = 5;
+    private final static int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Enregistre une mesure.
+     * @param nanos La latence mesurée, en nanosecondes.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Obtient le nombre de mesures enregistrées.
+     * @return Le nombre de mesures.
+     */
+    public long count() {
+        return total.get();
+    }
+
+    /**
+     * Obtient la plus grande mesure enregistrée.
+     * @return La plus grande latence, en nanosecondes.
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * Obtient la moyenne des mesures enregistrées.
+     * @return La latence moyenne, en nanosecondes, ou 0 sans mesure.
+     */
+    public double mean() {
+        long n = total.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /**
+     * Obtient la valeur sous laquelle se trouve le pourcentage spécifié des mesures.
+     * @param percent Le percentile recherché, entre 0 et 100.
+     * @return La borne supérieure de l'intervalle qui contient le percentile, en nanosecondes, ou 0 sans mesure.
+     */
+    public long percentile(double percent) {
+        long n = total.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(n * percent / 100.0));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Résume l'histogramme sur une ligne : nombre de mesures, moyenne, p50, p99, p999 et maximum en millisecondes.
+     * @return Le résumé de l'histogramme.
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "n=%d moy=%.3f p50=%.3f p99=%.3f p999=%.3f max=%.3f ms",
+                count(), mean() / 1e6, percentile(50) / 1e6, percentile(99) / 1e6, percentile(99.9) / 1e6,
+                max() / 1e6);
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // Les SUB_BITS + 1 bits de poids fort de la valeur donnent son intervalle dans sa puissance de deux
+        int exponent = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS + 1;
+        int sub = (int) (value >>> (exponent - 1)) - SUB_BUCKETS;
+        return exponent * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int index) {
+        int exponent = index / SUB_BUCKETS;
+        long sub = index % SUB_BUCKETS;
+        if (exponent == 0) {
+            return sub;
+        }
+        return ((SUB_BUCKETS + sub + 1) << (exponent - 1)) - 1;
+    }
+}
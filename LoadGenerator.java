@@ -0,0 +1,291 @@
+package client;
+
+import server.AdmissionControl;
+import server.BinaryProtocol;
+import server.LatencyHistogram;
+import server.Server;
+import server.WaitingRoom;
+import server.models.Course;
+import server.models.RegistrationForm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * La classe LoadGenerator simule une ruée d'inscriptions contre le serveur, sans interface.
+ * Chaque étudiant simulé ouvre sa propre connexion et répète, jusqu'à la fin de l'essai, le parcours du Client :
+ * CHARGER pour une session, pause de réflexion, puis INSCRIRE à un des cours reçus avec un RegistrationForm, et une
+ * autre pause. La session est tirée selon des poids configurables, et le cours parmi ceux reçus ou parmi une liste
+ * de codes donnée. À la fin, le générateur affiche pour chaque commande le débit et les latences p50, p99 et p999.
+ * Options (toutes facultatives) :
+ * --students=100 --duration=30 (secondes) --think=500 (millisecondes) --host=localhost --port=1337
+ * --sessions=Automne:1,Hiver:1,Ete:1 --courses=IFT1015,IFT2255 --embedded=false (démarre un Server local)
+ * --waiting-room=0 (inscriptions par seconde de la salle d'attente du Server local, 0 pour ne pas l'ouvrir)
+ */
+public class LoadGenerator {
+
+    /**
+     * Commande d'inscription.
+     */
+    public final static String REGISTER_COMMAND = "INSCRIRE";
+
+    /**
+     * Commande de chargement des cours.
+     */
+    public final static String LOAD_COMMAND = "CHARGER";
+
+    private final String host;
+    private final int port;
+    private final int students;
+    private final long durationMillis;
+    private final long thinkMillis;
+    private final String[] sessions;
+    private final int[] sessionWeights;
+    private final List<String> courseCodes;
+    private final Map<String, Stats> stats = new HashMap<>();
+
+    /**
+     * Constructeur de la classe LoadGenerator.
+     * @param options Les options du générateur, par nom (voir la description de la classe).
+     */
+    public LoadGenerator(Map<String, String> options) {
+        this.host = options.getOrDefault("host", "localhost");
+        this.port = Integer.parseInt(options.getOrDefault("port", "1337"));
+        this.students = Integer.parseInt(options.getOrDefault("students", "100"));
+        this.durationMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(options.getOrDefault("duration", "30")));
+        this.thinkMillis = Long.parseLong(options.getOrDefault("think", "500"));
+        String[] weighted = options.getOrDefault("sessions", "Automne:1,Hiver:1,Ete:1").split(",");
+        this.sessions = new String[weighted.length];
+        this.sessionWeights = new int[weighted.length];
+        for (int i = 0; i < weighted.length; i++) {
+            String[] parts = weighted[i].split(":");
+            sessions[i] = parts[0];
+            sessionWeights[i] = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+        }
+        String courses = options.get("courses");
+        this.courseCodes = courses != null ? Arrays.asList(courses.split(",")) : new ArrayList<>();
+        stats.put(LOAD_COMMAND, new Stats());
+        stats.put(REGISTER_COMMAND, new Stats());
+    }
+
+    /**
+     * Méthode principale pour lancer le générateur de charge.
+     * @param args Les options, sous la forme --nom=valeur.
+     * @throws Exception Si une exception survient lors de l'exécution de l'essai.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                System.out.println("Option invalide: " + arg);
+                return;
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        LoadGenerator generator = new LoadGenerator(options);
+
+        Server server = null;
+        if (Boolean.parseBoolean(options.getOrDefault("embedded", "false"))) {
+            server = new Server(generator.port);
+            // Tous les étudiants simulés partagent l'adresse locale : seul le serveur est mesuré, pas ses limites
+            server.setAdmissionControl(AdmissionControl.unlimited());
+            double throughput = Double.parseDouble(options.getOrDefault("waiting-room", "0"));
+            if (throughput > 0) {
+                server.setWaitingRoom(new WaitingRoom(throughput, WaitingRoom.DEFAULT_CAPACITY));
+            }
+            Thread serverThread = new Thread(server::run, "server");
+            serverThread.setDaemon(true);
+            serverThread.start();
+        }
+        try {
+            generator.run();
+        } finally {
+            if (server != null) {
+                server.shutdown(5, TimeUnit.SECONDS);
+            }
+        }
+        generator.report();
+    }
+
+    /**
+     * Lance les étudiants simulés et attend la fin de l'essai.
+     * @throws InterruptedException Si le thread est interrompu pendant l'attente.
+     */
+    public void run() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + durationMillis;
+        CountDownLatch done = new CountDownLatch(students);
+        for (int i = 0; i < students; i++) {
+            String matricule = String.format("%06d", i % 1000000);
+            Thread student = new Thread(() -> {
+                try {
+                    simulate(matricule, deadline);
+                } finally {
+                    done.countDown();
+                }
+            }, "student-" + matricule);
+            student.setDaemon(true);
+            student.start();
+        }
+        done.await();
+    }
+
+    /**
+     * Parcours d'un étudiant simulé jusqu'à l'échéance. Une connexion perdue est rouverte au tour suivant.
+     */
+    private void simulate(String matricule, long deadline) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // Les départs sont étalés sur une pause de réflexion, comme des étudiants qui n'arrivent pas tous ensemble
+        think(random.nextLong(thinkMillis + 1));
+        int nextRequestId = 1;
+        // Commande en cours, à laquelle une erreur de connexion est attribuée
+        String command = LOAD_COMMAND;
+        while (System.currentTimeMillis() < deadline) {
+            try (Socket socket = new Socket(host, port)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                BinaryProtocol.writeHandshake(out);
+                BinaryProtocol.readHandshake(in);
+                while (System.currentTimeMillis() < deadline) {
+                    String session = pickSession(random);
+
+                    command = LOAD_COMMAND;
+                    long start = System.nanoTime();
+                    int requestId = nextRequestId++;
+                    out.write(BinaryProtocol.encodeCommand(requestId, LOAD_COMMAND + " " + session));
+                    out.flush();
+                    ArrayList<Course> courses = BinaryProtocol.readCourseList(await(in, requestId), in);
+                    stats.get(LOAD_COMMAND).record(System.nanoTime() - start);
+
+                    think(thinkMillis);
+                    Course course = pickCourse(random, courses, session);
+                    if (course == null) {
+                        continue;
+                    }
+                    RegistrationForm form = new RegistrationForm("Etudiant", matricule,
+                            "etudiant" + matricule + "@umontreal.ca", matricule, course);
+
+                    command = REGISTER_COMMAND;
+                    start = System.nanoTime();
+                    requestId = nextRequestId++;
+                    out.write(BinaryProtocol.encodeCommand(requestId, REGISTER_COMMAND));
+                    out.write(BinaryProtocol.encodeForm(requestId, form));
+                    out.flush();
+                    await(in, requestId).getMessage();
+                    stats.get(REGISTER_COMMAND).record(System.nanoTime() - start);
+
+                    think(thinkMillis);
+                }
+            } catch (BinaryProtocol.RetryLaterException e) {
+                // Requête refusée par le contrôle d'admission : l'étudiant attend le délai conseillé
+                stats.get(command).errors.incrementAndGet();
+                think(e.getRetryAfter());
+            } catch (IOException e) {
+                stats.get(command).errors.incrementAndGet();
+                think(thinkMillis);
+            }
+        }
+    }
+
+    private static BinaryProtocol.Frame await(DataInputStream in, int requestId) throws IOException {
+        BinaryProtocol.Frame frame = BinaryProtocol.readFrame(in);
+        while (frame.isQueuePosition()) {
+            // Inscription en attente dans la salle d'attente du serveur : son temps d'attente compte dans sa latence
+            frame = BinaryProtocol.readFrame(in);
+        }
+        if (frame.getRequestId() != requestId) {
+            throw new ProtocolException("Réponse inattendue: " + frame.getRequestId());
+        }
+        return frame;
+    }
+
+    private String pickSession(ThreadLocalRandom random) {
+        int total = 0;
+        for (int weight : sessionWeights) {
+            total += weight;
+        }
+        int pick = random.nextInt(Math.max(1, total));
+        for (int i = 0; i < sessions.length; i++) {
+            pick -= sessionWeights[i];
+            if (pick < 0) {
+                return sessions[i];
+            }
+        }
+        return sessions[sessions.length - 1];
+    }
+
+    /**
+     * Choisit le cours de l'inscription parmi les codes demandés, ou parmi tous les cours reçus s'il n'y en a pas.
+     * @return Le cours choisi, ou null si aucun cours de la session ne convient.
+     */
+    private Course pickCourse(ThreadLocalRandom random, ArrayList<Course> courses, String session) {
+        List<Course> candidates = courses;
+        if (!courseCodes.isEmpty()) {
+            candidates = new ArrayList<>();
+            for (Course course : courses) {
+                if (courseCodes.contains(course.getCode())) {
+                    candidates.add(course);
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        Course course = candidates.get(random.nextInt(candidates.size()));
+        return new Course(course.getName(), course.getCode(), session);
+    }
+
+    private static void think(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Affiche le débit et les latences de chaque commande.
+     */
+    public void report() {
+        double seconds = durationMillis / 1000.0;
+        System.out.println("*** " + students + " étudiants pendant " + seconds + " s ***");
+        System.out.println(String.format(Locale.ROOT, "%-10s %10s %8s %10s %10s %10s %10s %10s",
+                "commande", "requêtes", "erreurs", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        for (String command : new String[]{LOAD_COMMAND, REGISTER_COMMAND}) {
+            Stats s = stats.get(command);
+            System.out.println(String.format(Locale.ROOT, "%-10s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f",
+                    command, s.histogram.count(), s.errors.get(), s.histogram.count() / seconds,
+                    s.histogram.percentile(50) / 1e6, s.histogram.percentile(99) / 1e6,
+                    s.histogram.percentile(99.9) / 1e6, s.histogram.max() / 1e6));
+        }
+    }
+
+    /**
+     * Mesures d'une commande.
+     */
+    private static final class Stats {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final AtomicLong errors = new AtomicLong();
+
+        private void record(long nanos) {
+            histogram.record(nanos);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classe RegistrationLog qui représente le journal des inscriptions, écrit en ajout seulement.
+ * Un seul FileChannel reste ouvert pendant toute la vie du serveur et un seul thread y écrit : les inscriptions
+ * reçues en même temps sont regroupées et écrites d'un seul coup (validation groupée), puis rendues durables selon
+ * la politique de synchronisation choisie. Chaque inscription obtient un CompletableFuture qui n'est complété
+ * qu'une fois sa ligne écrite et, selon la politique, synchronisée sur le disque. Les lignes ne peuvent donc
+ * jamais s'entremêler, et le coût d'une synchronisation est partagé par toutes les inscriptions du groupe.
+ */
+public class RegistrationLog implements Closeable {
+
+    /**
+     * Chemin par défaut du fichier des inscriptions.
+     */
+    public final static String REGISTRATIONS_FILE = "src/main/java/server/data/inscription.txt";
+
+    /**
+     * Nombre maximal d'inscriptions en attente d'écriture; au-delà, append() attend qu'une place se libère.
+     */
+    public final static int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * Nombre maximal d'inscriptions écrites dans un même groupe.
+     */
+    public final static int MAX_GROUP_SIZE = 512;
+
+    /**
+     * Politiques de synchronisation du journal sur le disque.
+     */
+    public enum SyncPolicy {
+        /**
+         * Les lignes sont confirmées dès qu'elles sont écrites dans le fichier; le système d'exploitation décide
+         * quand elles atteignent le disque.
+         */
+        NONE,
+        /**
+         * Le fichier est synchronisé après chaque groupe, avant de confirmer les lignes du groupe.
+         */
+        GROUP,
+        /**
+         * Le fichier est synchronisé au plus une fois par intervalle; les lignes écrites entre-temps attendent
+         * la prochaine synchronisation avant d'être confirmées.
+         */
+        INTERVAL
+    }
+
+    private static final Record CLOSE = new Record(new byte[0]);
+
+    private final Path file;
+    private final FileChannel channel;
+    private final SyncPolicy policy;
+    private final long syncIntervalNanos;
+    private final BlockingQueue<Record> queue;
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Constructeur de la classe RegistrationLog, avec une synchronisation après chaque groupe.
+     * @param file Le fichier des inscriptions, créé s'il n'existe pas.
+     * @throws IOException En cas d'erreur lors de l'ouverture du fichier.
+     */
+    public RegistrationLog(Path file) throws IOException {
+        this(file, SyncPolicy.GROUP, 0);
+    }
+
+    /**
+     * Constructeur de la classe RegistrationLog.
+     * @param file Le fichier des inscriptions, créé s'il n'existe pas.
+     * @param policy La politique de synchronisation sur le disque.
+     * @param syncIntervalMillis Le délai maximal entre deux synchronisations avec SyncPolicy.INTERVAL, en millisecondes.
+     * @throws IOException En cas d'erreur lors de l'ouverture du fichier.
+     */
+    public RegistrationLog(Path file, SyncPolicy policy, long syncIntervalMillis) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.policy = policy;
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+        this.queue = new ArrayBlockingQueue<>(DEFAULT_CAPACITY);
+        this.writer = new Thread(this::writeLoop, "registration-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Obtient le fichier des inscriptions.
+     * @return Le fichier du journal.
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Obtient l'histogramme des latences d'écriture du fichier : écriture d'un groupe et, selon la politique,
+     * synchronisation sur le disque.
+     * @return L'histogramme des latences d'écriture.
+     */
+    public LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    /**
+     * Ajoute une ligne au journal.
+     * @param line La ligne à ajouter, sans fin de ligne.
+     * @return Un CompletableFuture complété avec la position de la ligne dans le fichier lorsqu'elle est durable,
+     * ou en erreur si elle n'a pas pu être écrite.
+     */
+    public CompletableFuture<Long> append(String line) {
+        return enqueue(new Record(encode(line)));
+    }
+
+    /**
+     * Ajoute plusieurs lignes au journal en une seule écriture : elles sont écrites ensemble, dans l'ordre, et
+     * deviennent durables ensemble.
+     * @param lines Les lignes à ajouter, sans fin de ligne.
+     * @return Un CompletableFuture complété avec la position de la première ligne dans le fichier lorsque les lignes
+     * sont durables, ou en erreur si elles n'ont pas pu être écrites. Chaque ligne suit la précédente; la longueur
+     * d'une ligne est donnée par encode().
+     */
+    public CompletableFuture<Long> appendAll(List<String> lines) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (String line : lines) {
+            bytes.writeBytes(encode(line));
+        }
+        return enqueue(new Record(bytes.toByteArray()));
+    }
+
+    /**
+     * Encode une ligne telle qu'elle est écrite dans le fichier, fin de ligne comprise.
+     * @param line La ligne, sans fin de ligne.
+     * @return Les octets de la ligne.
+     */
+    public static byte[] encode(String line) {
+        return (line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private CompletableFuture<Long> enqueue(Record record) {
+        if (closed) {
+            record.future.completeExceptionally(new IOException("Journal des inscriptions fermé"));
+            return record.future;
+        }
+        try {
+            queue.put(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            record.future.completeExceptionally(e);
+        }
+        return record.future;
+    }
+
+    /**
+     * Écrit les lignes en attente puis ferme le journal. Les lignes ajoutées après la fermeture sont refusées.
+     * @throws IOException En cas d'erreur lors de la fermeture du fichier.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            // Le FileChannel serait fermé si le thread d'écriture était interrompu : il est arrêté par une marque
+            queue.put(CLOSE);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Lignes ajoutées pendant la fermeture, après le dernier groupe
+        List<Record> late = new ArrayList<>();
+        queue.drainTo(late);
+        for (Record record : late) {
+            record.future.completeExceptionally(new IOException("Journal des inscriptions fermé"));
+        }
+        channel.close();
+    }
+
+    private void writeLoop() {
+        List<Record> group = new ArrayList<>();
+        List<Record> unsynced = new ArrayList<>();
+        long lastSync = System.nanoTime();
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                Record first = unsynced.isEmpty()
+                        ? queue.take()
+                        : queue.poll(Math.max(0, lastSync + syncIntervalNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    group.add(first);
+                    queue.drainTo(group, MAX_GROUP_SIZE - 1);
+                }
+            } catch (InterruptedException e) {
+                // Le thread d'écriture n'est jamais interrompu par le journal lui-même
+                stopping = true;
+            }
+            // Fermeture : les lignes du groupe sont écrites et synchronisées avant de quitter
+            stopping |= group.remove(CLOSE);
+            boolean sync = stopping || policy == SyncPolicy.GROUP
+                    || (policy == SyncPolicy.INTERVAL && System.nanoTime() - lastSync >= syncIntervalNanos);
+            writeGroup(group, unsynced, sync);
+            if (sync) {
+                lastSync = System.nanoTime();
+            }
+            group.clear();
+        }
+    }
+
+    /**
+     * Écrit un groupe de lignes, synchronise le fichier si demandé, puis confirme les lignes devenues durables.
+     * Si l'écriture ou la synchronisation échoue, le fichier est ramené à sa taille d'avant la première ligne non
+     * confirmée : une ligne refusée à l'appelant ne reste pas dans le fichier, où elle serait comptée au redémarrage
+     * et écrite une seconde fois si l'inscription est soumise de nouveau.
+     */
+    private void writeGroup(List<Record> group, List<Record> unsynced, boolean sync) {
+        long start = System.nanoTime();
+        // Début de la première ligne écrite mais pas encore confirmée, ou -1 si rien n'a encore été écrit
+        long rollback = unsynced.isEmpty() ? -1 : unsynced.get(0).position;
+        try {
+            if (!group.isEmpty()) {
+                // Seul ce thread écrit dans le fichier : chaque ligne commence là où la précédente se termine
+                long position = channel.size();
+                if (rollback < 0) {
+                    rollback = position;
+                }
+                int length = 0;
+                for (Record record : group) {
+                    record.position = position + length;
+                    length += record.bytes.length;
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(length);
+                for (Record record : group) {
+                    buffer.put(record.bytes);
+                }
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            if (policy == SyncPolicy.NONE) {
+                recordWrite(group, start);
+                complete(group);
+                return;
+            }
+            unsynced.addAll(group);
+            boolean force = sync && !unsynced.isEmpty();
+            if (force) {
+                channel.force(false);
+            }
+            recordWrite(group, start);
+            if (force) {
+                complete(unsynced);
+                unsynced.clear();
+            }
+        } catch (IOException e) {
+            if (rollback >= 0) {
+                // Une écriture partielle ou une synchronisation refusée peut avoir laissé une partie des lignes
+                try {
+                    channel.truncate(rollback);
+                    channel.force(true);
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            for (Record record : group) {
+                record.future.completeExceptionally(e);
+            }
+            for (Record record : unsynced) {
+                record.future.completeExceptionally(e);
+            }
+            unsynced.clear();
+        }
+    }
+
+    private void recordWrite(List<Record> group, long start) {
+        if (!group.isEmpty()) {
+            writeLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    private static void complete(List<Record> records) {
+        for (Record record : records) {
+            record.future.complete(record.position);
+        }
+    }
+
+    /**
+     * Ligne en attente d'écriture, sa position une fois écrite et confirmation promise à l'appelant.
+     */
+    private static final class Record {
+        private final byte[] bytes;
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+        private long position;
+
+        private Record(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package server;
+
+import server.models.Course;
+import server.models.RegistrationForm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Classe RegistrationStore qui représente les inscriptions déjà enregistrées, indexées en mémoire.
+ * Au démarrage, le fichier des inscriptions est projeté en mémoire (memory-mapped) et parcouru une seule fois pour
+ * construire trois index : par inscription (session, code du cours, matricule), par cours et par étudiant. L'index
+ * des inscriptions garde, pour chaque inscription, une clé String « session\tcode\tmatricule » associée à la position
+ * de sa ligne dans le fichier; les index par cours et par étudiant gardent, sous une clé String (session et code, ou
+ * matricule), un tableau des positions des lignes. Le prénom, le nom et l'email ne sont pas gardés en mémoire : ils
+ * sont relus dans la projection au besoin. La mémoire utilisée croît donc avec le nombre d'inscriptions, d'environ
+ * une clé String et trois positions par inscription, mais pas avec la taille des lignes.
+ * Les nouvelles inscriptions sont écrites par le RegistrationLog : une inscription en double est refusée en temps
+ * constant, avant d'être écrite, et une inscription n'apparaît dans les index qu'une fois durable.
+ */
+public class RegistrationStore implements Closeable {
+
+    /**
+     * Position réservée pour une inscription en cours d'écriture.
+     */
+    private final static long PENDING = -1;
+
+    private final RegistrationLog log;
+    private final FileChannel channel;
+    private final ConcurrentHashMap<String, Long> registrations = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Offsets> byCourse = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Offsets> byStudent = new ConcurrentHashMap<>();
+    private volatile MappedByteBuffer mapped;
+
+    /**
+     * Constructeur de la classe RegistrationStore. Les inscriptions déjà présentes dans le fichier du journal sont
+     * indexées immédiatement; une inscription présente plusieurs fois n'est indexée qu'à sa première ligne.
+     * @param log Le journal qui écrit les nouvelles inscriptions, et dont le fichier est indexé.
+     * @throws IOException En cas d'erreur lors de la lecture du fichier.
+     */
+    public RegistrationStore(RegistrationLog log) throws IOException {
+        this.log = log;
+        this.channel = FileChannel.open(log.getFile(), StandardOpenOption.READ);
+        load(map(channel.size()));
+    }
+
+    /**
+     * Enregistre une inscription, à moins que l'étudiant ne soit déjà inscrit à ce cours pour cette session.
+     * @param form Le formulaire d'inscription.
+     * @return Un CompletableFuture complété avec true lorsque l'inscription est durable, avec false tout de suite si
+     * elle existe déjà, ou en erreur si elle n'a pas pu être écrite.
+     */
+    public CompletableFuture<Boolean> register(RegistrationForm form) {
+        Course course = form.getCourse();
+        String key = key(course.getSession(), course.getCode(), form.getMatricule());
+        if (registrations.putIfAbsent(key, PENDING) != null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        return log.append(line(form)).handle((position, e) -> {
+            if (e != null) {
+                // L'inscription n'a pas été écrite : elle pourra être soumise de nouveau
+                registrations.remove(key);
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+            }
+            registrations.put(key, position);
+            index(course.getSession(), course.getCode(), form.getMatricule(), position);
+            return true;
+        });
+    }
+
+    /**
+     * Enregistre plusieurs inscriptions en une seule écriture durable.
+     * Les inscriptions qui existent déjà, ou qui apparaissent plus d'une fois dans la liste, ne sont pas écrites.
+     * @param forms Les formulaires d'inscription.
+     * @return Un CompletableFuture complété, lorsque les inscriptions sont durables, avec un tableau qui indique pour
+     * chaque formulaire s'il a été enregistré (false pour un doublon), ou en erreur si l'écriture a échoué; aucune
+     * inscription de la liste n'est alors enregistrée.
+     */
+    public CompletableFuture<boolean[]> registerAll(List<RegistrationForm> forms) {
+        boolean[] added = new boolean[forms.size()];
+        List<String> keys = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < forms.size(); i++) {
+            RegistrationForm form = forms.get(i);
+            Course course = form.getCourse();
+            String key = key(course.getSession(), course.getCode(), form.getMatricule());
+            if (registrations.putIfAbsent(key, PENDING) == null) {
+                added[i] = true;
+                keys.add(key);
+                lines.add(line(form));
+            }
+        }
+        if (lines.isEmpty()) {
+            return CompletableFuture.completedFuture(added);
+        }
+        return log.appendAll(lines).handle((start, e) -> {
+            if (e != null) {
+                for (String key : keys) {
+                    registrations.remove(key);
+                }
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+            }
+            // Les lignes ont été écrites à la suite les unes des autres à partir de la position de la première
+            long position = start;
+            int line = 0;
+            for (int i = 0; i < forms.size(); i++) {
+                if (!added[i]) {
+                    continue;
+                }
+                RegistrationForm form = forms.get(i);
+                Course course = form.getCourse();
+                registrations.put(keys.get(line), position);
+                index(course.getSession(), course.getCode(), form.getMatricule(), position);
+                position += RegistrationLog.encode(lines.get(line)).length;
+                line++;
+            }
+            return added;
+        });
+    }
+
+    /**
+     * Indique si un étudiant est inscrit à un cours, ou en voie de l'être.
+     * @param session La session du cours, sans tenir compte de la casse.
+     * @param code Le code du cours.
+     * @param matricule Le matricule de l'étudiant.
+     * @return true si l'inscription existe.
+     */
+    public boolean contains(String session, String code, String matricule) {
+        return registrations.containsKey(key(session, code, matricule));
+    }
+
+    /**
+     * Obtient les inscriptions à un cours.
+     * Le nom du cours n'est pas enregistré dans le fichier des inscriptions : il est null dans les cours retournés.
+     * @param session La session du cours, sans tenir compte de la casse.
+     * @param code Le code du cours.
+     * @return Les inscriptions au cours, dans l'ordre de leur enregistrement.
+     * @throws IOException En cas d'erreur lors de la lecture du fichier.
+     */
+    public List<RegistrationForm> getByCourse(String session, String code) throws IOException {
+        return read(byCourse.get(CourseCatalog.courseKey(session, code)));
+    }
+
+    /**
+     * Obtient les inscriptions d'un étudiant.
+     * Le nom du cours n'est pas enregistré dans le fichier des inscriptions : il est null dans les cours retournés.
+     * @param matricule Le matricule de l'étudiant.
+     * @return Les inscriptions de l'étudiant, dans l'ordre de leur enregistrement.
+     * @throws IOException En cas d'erreur lors de la lecture du fichier.
+     */
+    public List<RegistrationForm> getByStudent(String matricule) throws IOException {
+        return read(byStudent.get(matricule));
+    }
+
+    /**
+     * Obtient le nombre d'inscriptions enregistrées ou en cours d'écriture.
+     * @return Le nombre d'inscriptions.
+     */
+    public int size() {
+        return registrations.size();
+    }
+
+    /**
+     * Ferme le fichier projeté. Le journal, lui, reste la responsabilité de son propriétaire.
+     * @throws IOException En cas d'erreur lors de la fermeture du fichier.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Obtient le nombre d'inscriptions durables à un cours.
+     * @param session La session du cours, sans tenir compte de la casse.
+     * @param code Le code du cours.
+     * @return Le nombre d'inscriptions au cours.
+     */
+    public int count(String session, String code) {
+        Offsets offsets = byCourse.get(CourseCatalog.courseKey(session, code));
+        return offsets != null ? offsets.size() : 0;
+    }
+
+    /**
+     * Construit la ligne d'une inscription dans le fichier : session, code du cours, matricule, prénom, nom et
+     * email séparés par des tabulations.
+     */
+    private static String line(RegistrationForm form) {
+        return form.getCourse().getSession() + "\t" +
+                form.getCourse().getCode() + "\t" +
+                form.getMatricule() + "\t" +
+                form.getPrenom() + "\t" +
+                form.getNom() + "\t" +
+                form.getEmail();
+    }
+
+    private static String key(String session, String code, String matricule) {
+        return CourseCatalog.courseKey(session, code) + "\t" + matricule;
+    }
+
+    private void index(String session, String code, String matricule, long position) {
+        byCourse.computeIfAbsent(CourseCatalog.courseKey(session, code), k -> new Offsets()).add(position);
+        byStudent.computeIfAbsent(matricule, k -> new Offsets()).add(position);
+    }
+
+    /**
+     * Parcourt les lignes déjà présentes dans le fichier et les ajoute aux index.
+     * Les lignes incomplètes sont ignorées.
+     */
+    private void load(MappedByteBuffer buffer) {
+        int start = 0;
+        int limit = buffer.limit();
+        while (start < limit) {
+            int end = lineEnd(buffer, start);
+            String[] parts = decode(buffer, start, end).split("\t");
+            if (parts.length >= 3) {
+                String key = key(parts[0], parts[1], parts[2]);
+                if (registrations.putIfAbsent(key, (long) start) == null) {
+                    index(parts[0], parts[1], parts[2], start);
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Relit les lignes aux positions spécifiées dans la projection du fichier.
+     */
+    private List<RegistrationForm> read(Offsets offsets) throws IOException {
+        List<RegistrationForm> forms = new ArrayList<>();
+        if (offsets == null) {
+            return forms;
+        }
+        long[] positions = offsets.toArray();
+        if (positions.length == 0) {
+            return forms;
+        }
+        MappedByteBuffer buffer = mapped;
+        for (long position : positions) {
+            if (position >= buffer.limit()) {
+                // Ligne écrite après la dernière projection du fichier
+                buffer = map(channel.size());
+            }
+            int start = (int) position;
+            String[] parts = decode(buffer, start, lineEnd(buffer, start)).split("\t", -1);
+            if (parts.length >= 6) {
+                forms.add(new RegistrationForm(parts[3], parts[4], parts[5], parts[2],
+                        new Course(null, parts[1], parts[0])));
+            }
+        }
+        return forms;
+    }
+
+    /**
+     * Projette le fichier en mémoire jusqu'à la taille spécifiée, si la projection courante est plus petite.
+     */
+    private synchronized MappedByteBuffer map(long size) throws IOException {
+        MappedByteBuffer current = mapped;
+        if (current != null && current.limit() >= size) {
+            return current;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Fichier des inscriptions trop volumineux pour être projeté: " + size);
+        }
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        return mapped;
+    }
+
+    /**
+     * Trouve la fin de la ligne qui commence à la position spécifiée, sans modifier la position du tampon.
+     */
+    private static int lineEnd(MappedByteBuffer buffer, int start) {
+        int end = start;
+        while (end < buffer.limit() && buffer.get(end) != '\n') {
+            end++;
+        }
+        return end;
+    }
+
+    private static String decode(MappedByteBuffer buffer, int start, int end) {
+        if (end > start && buffer.get(end - 1) == '\r') {
+            end--;
+        }
+        byte[] line = new byte[end - start];
+        for (int i = 0; i < line.length; i++) {
+            line[i] = buffer.get(start + i);
+        }
+        return new String(line, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Liste extensible de positions, plus compacte qu'une liste de Long pour un grand nombre d'inscriptions.
+     */
+    private static final class Offsets {
+        private long[] positions = new long[4];
+        private int size;
+
+        private synchronized void add(long position) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+        }
+
+        private synchronized int size() {
+            return size;
+        }
+
+        private synchronized long[] toArray() {
+            return Arrays.copyOf(positions, size);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package server;
+
+import server.models.Course;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Classe ResponseCache qui garde, pour chaque session, la réponse à la commande CHARGER déjà encodée.
+ * La liste des cours d'une session est encodée une seule fois par version du catalogue et par protocole
+ * (sérialisation Java ou protocole binaire); chaque requête suivante se résume à copier ces octets dans le flux
+ * du client. Une entrée construite pour une ancienne version du catalogue n'est jamais renvoyée : elle est
+ * remplacée dès que le catalogue change.
+ * Pour la commande CHARGER_FLUX, la liste est aussi gardée découpée en trames de CHUNK_SIZE cours, envoyées une à
+ * une : la mémoire utilisée par requête ne dépend pas de la taille du catalogue.
+ * Chaque liste a aussi une version, calculée à partir de son contenu : un client qui a déjà la liste de cette
+ * version n'a pas besoin de la recevoir de nouveau (voir Server.IF_NOT_VERSION). Une liste inchangée garde la
+ * même version d'un rechargement du catalogue à l'autre.
+ */
+public class ResponseCache {
+
+    /**
+     * Nombre de cours de chaque trame d'une réponse en flux.
+     */
+    public final static int CHUNK_SIZE = 100;
+
+    private final CourseCatalog catalog;
+    private final ConcurrentHashMap<String, Entry> coursesBySession = new ConcurrentHashMap<>();
+
+    /**
+     * Constructeur de la classe ResponseCache.
+     * @param catalog Le catalogue des cours dont les réponses sont gardées en cache.
+     */
+    public ResponseCache(CourseCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * Obtient la liste des cours d'une session déjà encodée pour le protocole spécifié.
+     * Les sessions inconnues ne sont pas gardées en cache, pour que le cache reste borné par le catalogue.
+     * @param session La session demandée par le client.
+     * @param protocol Le protocole de la connexion du client.
+     * @return Les octets de la liste des cours, à écrire avec ClientConnection.writeEncoded().
+     */
+    public byte[] getCourses(String session, ClientConnection.Protocol protocol) {
+        return entry(session).encoded(protocol);
+    }
+
+    /**
+     * Indique si la liste des cours d'une session tient dans une seule trame du protocole binaire. Sinon, la
+     * réponse à CHARGER est envoyée en pages, comme avec CHARGER_FLUX (voir getCourseChunks()).
+     * @param session La session demandée par le client.
+     * @return true si la liste tient dans une trame COURSES.
+     */
+    public boolean fitsInFrame(String session) {
+        return entry(session).fitsInFrame();
+    }
+
+    /**
+     * Obtient la liste des cours d'une session découpée en pages d'au plus CHUNK_SIZE cours, chacune déjà encodée
+     * en trame COURSE_PAGE du protocole binaire. Une page est plus courte si ses cours ne tiennent pas dans une
+     * trame. Une session vide ou inconnue donne une seule page vide, pour que le client sache que la réponse est
+     * complète.
+     * @param session La session demandée par le client.
+     * @return Les trames des pages, dans l'ordre, à écrire avec ClientConnection.writeEncoded().
+     */
+    public byte[][] getCourseChunks(String session) {
+        return entry(session).chunks();
+    }
+
+    /**
+     * Obtient la version de la liste des cours d'une session.
+     * @param session La session demandée par le client.
+     * @return La version de la liste, qui change dès que son contenu change.
+     */
+    public String getVersion(String session) {
+        return entry(session).version();
+    }
+
+    /**
+     * Obtient l'entrée d'une session. Comme le catalogue, le cache ne tient pas compte de la casse de la session :
+     * "Automne" et "AUTOMNE" partagent la même entrée.
+     */
+    private Entry entry(String session) {
+        CourseCatalog.Snapshot snapshot = catalog.getSnapshot();
+        String key = session.toLowerCase(Locale.ROOT);
+        Entry entry = coursesBySession.get(key);
+        if (entry == null || entry.snapshot != snapshot) {
+            ArrayList<Course> courses = snapshot.getCourses(session);
+            entry = new Entry(snapshot, courses);
+            if (!courses.isEmpty()) {
+                coursesBySession.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Encode une liste de cours pour le protocole spécifié.
+     * @param courses La liste des cours.
+     * @param protocol Le protocole de la connexion du client.
+     * @return Les octets de la liste des cours.
+     */
+    static byte[] encode(ArrayList<Course> courses, ClientConnection.Protocol protocol) {
+        if (protocol == ClientConnection.Protocol.BINARY) {
+            // L'identifiant de requête est remplacé à l'écriture, voir BinaryProtocol.writeFrame()
+            return BinaryProtocol.encodeCourses(0, courses);
+        }
+        return serialize(courses);
+    }
+
+    /**
+     * Sérialise un objet comme le premier objet d'un nouveau flux, puis retire l'en-tête du flux.
+     * @param object L'objet à sérialiser.
+     * @return Les octets de l'objet.
+     */
+    static byte[] serialize(Object object) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream(bytes);
+            out.flush();
+            int headerLength = bytes.size();
+            out.writeObject(object);
+            out.flush();
+            byte[] all = bytes.toByteArray();
+            return Arrays.copyOfRange(all, headerLength, all.length);
+        } catch (IOException e) {
+            // Un ByteArrayOutputStream ne lance pas d'IOException
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Réponses encodées d'une session, par protocole, et version du catalogue à partir de laquelle elles ont été
+     * construites. Chaque encodage est produit au premier besoin; deux threads peuvent le produire en même temps,
+     * ce qui donne le même résultat.
+     */
+    private static final class Entry {
+        private final CourseCatalog.Snapshot snapshot;
+        private final ArrayList<Course> courses;
+        private final AtomicReferenceArray<byte[]> encoded =
+                new AtomicReferenceArray<>(ClientConnection.Protocol.values().length);
+        private volatile byte[][] chunks;
+        private volatile String version;
+        private volatile Boolean fitsInFrame;
+
+        private Entry(CourseCatalog.Snapshot snapshot, ArrayList<Course> courses) {
+            this.snapshot = snapshot;
+            this.courses = courses;
+        }
+
+        private byte[] encoded(ClientConnection.Protocol protocol) {
+            byte[] bytes = encoded.get(protocol.ordinal());
+            if (bytes == null) {
+                bytes = encode(courses, protocol);
+                encoded.set(protocol.ordinal(), bytes);
+            }
+            return bytes;
+        }
+
+        /**
+         * Calcule la version de la liste : une empreinte FNV-1a sur 64 bits de tous les champs des cours.
+         */
+        private String version() {
+            String v = version;
+            if (v == null) {
+                long hash = 0xcbf29ce484222325L;
+                for (Course course : courses) {
+                    hash = fnv(hash, course.getCode());
+                    hash = fnv(hash, course.getName());
+                    hash = fnv(hash, course.getSession());
+                }
+                v = Long.toHexString(hash);
+                version = v;
+            }
+            return v;
+        }
+
+        private static long fnv(long hash, String value) {
+            for (int i = 0; i < value.length(); i++) {
+                hash ^= value.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            // Séparateur de champ, pour que "ab"+"c" et "a"+"bc" ne donnent pas la même empreinte
+            hash ^= 0xffff;
+            hash *= 0x100000001b3L;
+            return hash;
+        }
+
+        private boolean fitsInFrame() {
+            Boolean fits = fitsInFrame;
+            if (fits == null) {
+                fits = BinaryProtocol.fitsInCoursesFrame(courses);
+                fitsInFrame = fits;
+            }
+            return fits;
+        }
+
+        private byte[][] chunks() {
+            byte[][] frames = chunks;
+            if (frames == null) {
+                int total = courses.size();
+                List<byte[]> pages = new ArrayList<>();
+                int from = 0;
+                do {
+                    int to = from + BinaryProtocol.fittingCourses(courses, from, CHUNK_SIZE);
+                    CourseIndex.Page page = new CourseIndex.Page(total, from, new ArrayList<>(courses.subList(from, to)));
+                    // L'identifiant de requête est remplacé à l'écriture, voir BinaryProtocol.writeFrame()
+                    pages.add(BinaryProtocol.encodeCoursePage(0, page));
+                    from = to;
+                } while (from < total);
+                frames = pages.toArray(new byte[0][]);
+                chunks = frames;
+            }
+            return frames;
+        }
+    }
+}
@@ -0,0 +1,571 @@
+package server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Classe SelectorEngine qui représente le moteur non bloquant du serveur.
+ * Un seul thread accepte les connexions, lit les octets reçus et écrit les réponses à l'aide d'un Selector.
+ * Le moteur découpe lui-même les commandes CHARGER, INSCRIRE et INSCRIRE_LOT dans le flux reçu, puis confie
+ * chaque commande complète aux EventHandlers du serveur sur l'exécuteur du serveur. Une connexion lente ou
+ * inactive ne coûte donc qu'un tampon, et non un thread.
+ * La réponse d'une commande est remise au thread du Selector par morceaux, à chaque vidage du flux de sortie de la
+ * connexion (par exemple après chaque page de CHARGER_FLUX), et non seulement à la fin du traitement. Les octets en
+ * attente d'envoi d'une connexion sont bornés par MAX_PENDING_OUTPUT : au-delà, le thread qui produit la réponse
+ * attend que le client la lise, comme il attendrait sur un socket bloquant.
+ * Comme pour le moteur bloquant, le protocole du client (binaire ou sérialisation Java) est détecté à ses
+ * premiers octets. Une connexion binaire reste ouverte et ses requêtes sont traitées une à la fois, dans l'ordre;
+ * une connexion sérialisée est fermée après sa réponse, comme le font les anciens clients.
+ */
+public class SelectorEngine {
+
+    /**
+     * Taille maximale d'une requête, au-delà de laquelle la connexion est fermée.
+     */
+    public final static int MAX_REQUEST_BYTES = 64 * 1024;
+
+    /**
+     * Nombre maximal d'octets d'une réponse en attente d'envoi, au-delà duquel le thread qui produit la réponse
+     * attend que le client en lise une partie.
+     */
+    public final static int MAX_PENDING_OUTPUT = 256 * 1024;
+
+    /**
+     * En-tête du flux d'objets, que l'ancien client attend avant d'envoyer sa commande.
+     */
+    private final static byte[] STREAM_HEADER = streamHeader();
+
+    /**
+     * Réponse du serveur à la poignée de main du protocole binaire.
+     */
+    private final static byte[] HANDSHAKE = handshake();
+
+    private final Server server;
+    private final ServerSocketChannel serverChannel;
+    private final Executor workers;
+    private final Selector selector;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(8 * 1024);
+    private final Queue<Response> responses = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    /**
+     * Constructeur de la classe SelectorEngine.
+     * @param server Le serveur dont les EventHandlers traitent les commandes.
+     * @param serverChannel Le canal serveur déjà lié au port d'écoute.
+     * @param workers L'exécuteur sur lequel les commandes sont traitées.
+     * @throws IOException En cas d'erreur lors de l'ouverture du Selector.
+     */
+    public SelectorEngine(Server server, ServerSocketChannel serverChannel, Executor workers) throws IOException {
+        this.server = server;
+        this.serverChannel = serverChannel;
+        this.workers = workers;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Boucle principale du moteur. Retourne lorsque stop() est appelé ou que le canal serveur est fermé.
+     * @throws IOException En cas d'erreur du Selector.
+     */
+    public void run() throws IOException {
+        try {
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (ClosedChannelException e) {
+            // Le serveur a été arrêté avant le démarrage du moteur
+            return;
+        }
+        try {
+            while (running) {
+                selector.select();
+                sendResponses();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else if (key.isReadable()) {
+                            read(key);
+                        } else if (key.isWritable()) {
+                            write(key);
+                        }
+                    } catch (IOException e) {
+                        close(key);
+                    }
+                }
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                close(key);
+            }
+            selector.close();
+        }
+    }
+
+    /**
+     * Demande l'arrêt du moteur et réveille le Selector.
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            server.getMetrics().connectionAccepted();
+            if (!server.getAdmissionControl().admitConnection(channel.socket().getInetAddress())) {
+                channel.close();
+                continue;
+            }
+            server.getMetrics().connectionOpened();
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+        }
+    }
+
+    private static byte[] streamHeader() {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try {
+            new ObjectOutputStream(header).flush();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return header.toByteArray();
+    }
+
+    private static byte[] handshake() {
+        ByteArrayOutputStream handshake = new ByteArrayOutputStream();
+        try {
+            BinaryProtocol.writeHandshake(new DataOutputStream(handshake));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return handshake.toByteArray();
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        readBuffer.clear();
+        int n = connection.channel.read(readBuffer);
+        if (n < 0) {
+            close(key);
+            return;
+        }
+        server.getMetrics().addBytesIn(n);
+        readBuffer.flip();
+        if (connection.length - connection.start + n > MAX_REQUEST_BYTES) {
+            close(key);
+            return;
+        }
+        connection.append(readBuffer);
+
+        if (connection.protocol == null && !detectProtocol(key, connection)) {
+            return;
+        }
+        processNextRequest(key, connection);
+    }
+
+    /**
+     * Confie au bassin de threads la prochaine requête complète du tampon, s'il y en a une et qu'aucune requête de
+     * cette connexion n'est déjà en traitement.
+     */
+    private void processNextRequest(SelectionKey key, Connection connection) {
+        if (connection.busy) {
+            return;
+        }
+        int requestLength;
+        try {
+            requestLength = connection.protocol == ClientConnection.Protocol.BINARY
+                    ? binaryRequestLength(connection.input, connection.start, connection.length)
+                    : serializedRequestLength(connection.input, connection.length);
+        } catch (IOException | ClassNotFoundException e) {
+            close(key);
+            return;
+        }
+        if (requestLength < 0) {
+            // Requête incomplète, on attend la suite
+            return;
+        }
+        // On cesse de lire jusqu'à la réponse : les requêtes suivantes attendent dans le tampon ou dans le socket
+        connection.busy = true;
+        updateInterest(key, connection);
+        byte[] request = Arrays.copyOfRange(connection.input, connection.start, connection.start + requestLength);
+        connection.start += requestLength;
+        try {
+            workers.execute(() -> handle(key, connection, request));
+        } catch (RejectedExecutionException e) {
+            close(key);
+        }
+    }
+
+    /**
+     * Détecte le protocole du client à ses premiers octets et répond à l'ouverture de la connexion : en-tête du
+     * flux d'objets pour l'ancien client, poignée de main pour le protocole binaire.
+     * @return true si le protocole est connu, false s'il faut attendre d'autres octets.
+     */
+    private boolean detectProtocol(SelectionKey key, Connection connection) throws IOException {
+        if (connection.length < 2) {
+            return false;
+        }
+        if (BinaryProtocol.isBinary(connection.input[0], connection.input[1])) {
+            int handshakeLength = BinaryProtocol.MAGIC.length + 1;
+            if (connection.length < handshakeLength) {
+                return false;
+            }
+            BinaryProtocol.readHandshake(new DataInputStream(
+                    new ByteArrayInputStream(connection.input, 0, handshakeLength)));
+            connection.protocol = ClientConnection.Protocol.BINARY;
+            connection.start = handshakeLength;
+            connection.enqueue(ByteBuffer.wrap(HANDSHAKE));
+        } else {
+            // Le flux de l'ancien client, en-tête compris, est relu par le flux d'objets de la connexion
+            connection.protocol = ClientConnection.Protocol.SERIALIZED;
+            connection.start = 0;
+            connection.enqueue(ByteBuffer.wrap(STREAM_HEADER));
+        }
+        write(key);
+        return true;
+    }
+
+    /**
+     * Vérifie si le tampon contient une requête sérialisée complète : la ligne de commande, suivie du formulaire
+     * d'inscription pour la commande INSCRIRE, ou de la liste de formulaires pour la commande INSCRIRE_LOT.
+     * @param input Les octets reçus depuis l'ouverture de la connexion.
+     * @param length Le nombre d'octets valides.
+     * @return La longueur de la requête si elle est complète, -1 sinon.
+     */
+    private int serializedRequestLength(byte[] input, int length) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(input, 0, length))) {
+            in.setObjectInputFilter(ClientConnection.SERIALIZATION_FILTER);
+            String line = in.readObject().toString();
+            if (Command.decode(line).hasForms()) {
+                in.readObject();
+            }
+            return length;
+        } catch (EOFException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Vérifie si le tampon contient une requête binaire complète : la trame de commande, suivie de la trame du
+     * formulaire d'inscription pour la commande INSCRIRE, ou de la trame des formulaires pour INSCRIRE_LOT.
+     * @param input Les octets reçus depuis l'ouverture de la connexion.
+     * @param start La position de la requête dans le tampon.
+     * @param length Le nombre d'octets valides.
+     * @return La longueur de la requête si elle est complète, -1 sinon.
+     */
+    private int binaryRequestLength(byte[] input, int start, int length) throws IOException {
+        int commandLength = frameLength(input, start, length);
+        if (commandLength < 0) {
+            return -1;
+        }
+        String line = BinaryProtocol.readCommand(new DataInputStream(
+                new ByteArrayInputStream(input, start, commandLength)));
+        if (!Command.decode(line).hasForms()) {
+            return commandLength;
+        }
+        int formLength = frameLength(input, start + commandLength, length);
+        return formLength < 0 ? -1 : commandLength + formLength;
+    }
+
+    /**
+     * Calcule la longueur totale de la trame qui commence à la position spécifiée.
+     * @return La longueur de la trame, en-tête compris, ou -1 si la trame est incomplète.
+     */
+    private static int frameLength(byte[] input, int start, int length) throws ProtocolException {
+        if (length - start < BinaryProtocol.FRAME_HEADER_LENGTH) {
+            return -1;
+        }
+        int frameLength = ((input[start] & 0xFF) << 24) | ((input[start + 1] & 0xFF) << 16)
+                | ((input[start + 2] & 0xFF) << 8) | (input[start + 3] & 0xFF);
+        if (frameLength < BinaryProtocol.FRAME_HEADER_LENGTH - 4 || frameLength > BinaryProtocol.MAX_REQUEST_LENGTH) {
+            throw new ProtocolException("Longueur de trame invalide: " + frameLength);
+        }
+        return length - start - 4 < frameLength ? -1 : 4 + frameLength;
+    }
+
+    /**
+     * Traite une requête complète sur un thread de l'exécuteur. La réponse est remise au thread du Selector au fil
+     * de son écriture (voir ResponseStream), puis marquée comme terminée. Une requête reportée (voir
+     * ClientConnection.defer()) n'est marquée comme terminée que par ClientConnection.resume().
+     */
+    private void handle(SelectionKey key, Connection connection, byte[] request) {
+        ResponseStream response = new ResponseStream(key, connection);
+        try {
+            ClientConnection clientConnection = new ClientConnection(connection.protocol,
+                    new ByteArrayInputStream(request), response, connection.channel,
+                    connection.channel.socket().getInetAddress(), connection.channel.toString());
+            // L'en-tête du flux d'objets a déjà été envoyé à l'ouverture de la connexion
+            response.discard();
+            clientConnection.onResume(response::finish);
+            server.dispatch(clientConnection);
+            if (clientConnection.release()) {
+                return;
+            }
+            clientConnection.flush();
+        } catch (Exception e) {
+            ServerLog.get().error("Erreur lors du traitement d'une requête de " + connection.channel, e);
+        }
+        response.finish();
+    }
+
+    private void sendResponses() {
+        Response response;
+        while ((response = responses.poll()) != null) {
+            SelectionKey key = response.key;
+            if (!key.isValid()) {
+                continue;
+            }
+            Connection connection = (Connection) key.attachment();
+            connection.output.add(response.bytes);
+            if (response.last) {
+                connection.busy = false;
+                if (connection.protocol == ClientConnection.Protocol.SERIALIZED) {
+                    connection.closeAfterWrite = true;
+                } else {
+                    connection.compact();
+                }
+            }
+            try {
+                write(key);
+                if (response.last && key.isValid()) {
+                    processNextRequest(key, connection);
+                }
+            } catch (IOException e) {
+                close(key);
+            }
+        }
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        ByteBuffer buffer;
+        while ((buffer = connection.output.peek()) != null) {
+            int n = connection.channel.write(buffer);
+            server.getMetrics().addBytesOut(n);
+            connection.written(n);
+            if (buffer.hasRemaining()) {
+                break;
+            }
+            connection.output.poll();
+        }
+        if (connection.output.isEmpty() && connection.closeAfterWrite) {
+            close(key);
+        } else {
+            updateInterest(key, connection);
+        }
+    }
+
+    /**
+     * Écoute l'écriture tant qu'il reste des octets à envoyer, et la lecture tant qu'aucune requête n'est en cours.
+     */
+    private static void updateInterest(SelectionKey key, Connection connection) {
+        int ops = connection.output.isEmpty() ? 0 : SelectionKey.OP_WRITE;
+        if (!connection.busy && !connection.closeAfterWrite) {
+            ops |= SelectionKey.OP_READ;
+        }
+        key.interestOps(ops);
+    }
+
+    private void close(SelectionKey key) {
+        key.cancel();
+        if (key.attachment() instanceof Connection) {
+            ((Connection) key.attachment()).closed();
+        }
+        if (key.attachment() instanceof Connection && key.channel().isOpen()) {
+            server.getMetrics().connectionClosed();
+        }
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {
+            // Le canal est déjà fermé
+        }
+    }
+
+    /**
+     * État d'une connexion : protocole détecté, octets reçus et réponses en attente d'envoi.
+     * Seul le thread du Selector lit et modifie les tampons; le nombre d'octets en attente d'envoi est aussi lu par
+     * le thread qui produit la réponse, sous le verrou de la connexion.
+     */
+    private static final class Connection {
+        private final SocketChannel channel;
+        private final Queue<ByteBuffer> output = new ArrayDeque<>();
+        private ClientConnection.Protocol protocol;
+        private byte[] input = new byte[512];
+        private int start;
+        private int length;
+        private boolean busy;
+        private boolean closeAfterWrite;
+        private long pending;
+        private boolean closed;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Ajoute des octets à envoyer, produits par le thread du Selector.
+         */
+        private void enqueue(ByteBuffer bytes) {
+            reserve(bytes.remaining());
+            output.add(bytes);
+        }
+
+        /**
+         * Compte des octets à envoyer, avant qu'ils soient remis au thread du Selector.
+         */
+        private synchronized void reserve(int n) {
+            pending += n;
+        }
+
+        /**
+         * Compte des octets envoyés et réveille le thread qui attend de pouvoir produire la suite de la réponse.
+         */
+        private synchronized void written(int n) {
+            pending -= n;
+            if (pending <= MAX_PENDING_OUTPUT) {
+                notifyAll();
+            }
+        }
+
+        /**
+         * Attend que les octets en attente d'envoi repassent sous MAX_PENDING_OUTPUT.
+         * @throws IOException Si la connexion est fermée pendant l'attente, ou si l'attente est interrompue.
+         */
+        private synchronized void awaitWritable() throws IOException {
+            try {
+                while (pending > MAX_PENDING_OUTPUT && !closed) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Envoi de la réponse interrompu");
+            }
+            if (closed) {
+                throw new IOException("Connexion fermée: " + channel);
+            }
+        }
+
+        private synchronized void closed() {
+            closed = true;
+            notifyAll();
+        }
+
+        private void append(ByteBuffer bytes) {
+            int n = bytes.remaining();
+            if (length + n > input.length) {
+                input = Arrays.copyOf(input, Math.max(input.length * 2, length + n));
+            }
+            bytes.get(input, length, n);
+            length += n;
+        }
+
+        /**
+         * Retire du tampon les requêtes déjà traitées.
+         */
+        private void compact() {
+            System.arraycopy(input, start, input, 0, length - start);
+            length -= start;
+            start = 0;
+        }
+    }
+
+    /**
+     * Flux de sortie d'une requête en traitement. Les octets écrits sont gardés jusqu'au prochain vidage, puis remis
+     * au thread du Selector; le vidage attend ensuite que les octets en attente d'envoi de la connexion repassent
+     * sous MAX_PENDING_OUTPUT.
+     */
+    private final class ResponseStream extends OutputStream {
+        private final SelectionKey key;
+        private final Connection connection;
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+        private ResponseStream(SelectionKey key, Connection connection) {
+            this.key = key;
+            this.connection = connection;
+        }
+
+        @Override
+        public void write(int b) {
+            buffer.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            buffer.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (buffer.size() > 0) {
+                submit(false);
+                connection.awaitWritable();
+            }
+        }
+
+        /**
+         * Oublie les octets écrits depuis le dernier vidage.
+         */
+        private void discard() {
+            buffer.reset();
+        }
+
+        /**
+         * Remet les derniers octets de la réponse au thread du Selector et marque la réponse comme terminée.
+         */
+        private void finish() {
+            submit(true);
+        }
+
+        private void submit(boolean last) {
+            byte[] bytes = buffer.toByteArray();
+            buffer.reset();
+            connection.reserve(bytes.length);
+            responses.add(new Response(key, ByteBuffer.wrap(bytes), last));
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Partie d'une réponse produite par un thread de l'exécuteur pour une connexion.
+     */
+    private static final class Response {
+        private final SelectionKey key;
+        private final ByteBuffer bytes;
+        private final boolean last;
+
+        private Response(SelectionKey key, ByteBuffer bytes, boolean last) {
+            this.key = key;
+            this.bytes = bytes;
+            this.last = last;
+        }
+    }
+}
@@ -1,20 +1,49 @@
 package server;
 
-import javafx.util.Pair;
 import server.models.Course;
 import server.models.RegistrationForm;
 
 
 import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Classe Server qui représente un serveur d'inscription aux cours.
  * Le serveur écoute en continu sur un port spécifié et traite les commandes envoyées par les clients.
  * Il utilise des objets de la classe EventHandler pour gérer les événements liés aux commandes.
+ * Chaque connexion est traitée dans sa propre tâche, soit par un bassin borné de threads, soit par un thread
+ * virtuel par connexion, ce qui permet de servir plusieurs clients en même temps.
+ * Le serveur peut aussi être exécuté avec un moteur non bloquant (voir runSelector()) qui garde toutes les
+ * connexions ouvertes sur quelques threads seulement.
+ * Les requêtes, les connexions et les écritures du fichier des inscriptions sont mesurées (voir ServerMetrics);
+ * les mesures sont exposées par JMX et par la commande STATS.
+ * Chaque connexion et chaque requête passe d'abord par le contrôle d'admission (voir AdmissionControl) : un client
+ * trop insistant ou un serveur saturé reçoit immédiatement une réponse lui demandant de réessayer plus tard.
+ * Pendant l'ouverture des inscriptions, une salle d'attente (voir WaitingRoom) peut régler le débit des inscriptions.
  */
 
 public class Server {
@@ -25,24 +54,220 @@ public class Server {
     public final static String REGISTER_COMMAND = "INSCRIRE";
 
     /**
-     * Commande de chargement des cours.
+     * Commande d'inscription à plusieurs cours en une seule requête, suivie d'une liste de formulaires.
+     */
+    public final static String BATCH_REGISTER_COMMAND = "INSCRIRE_LOT";
+
+    /**
+     * Commande de chargement des cours, suivie de la session. La session peut être suivie de la position du premier
+     * cours et du nombre de cours voulus (par exemple "CHARGER Automne 100 50") pour ne recevoir qu'une page.
      */
     public final static String LOAD_COMMAND = "CHARGER";
+
+    /**
+     * Commande de chargement des cours en flux, suivie de la session : les cours sont envoyés par pages de
+     * ResponseCache.CHUNK_SIZE cours, chacune dès qu'elle est écrite, jusqu'à la dernière.
+     */
+    public final static String STREAM_LOAD_COMMAND = "CHARGER_FLUX";
+
+    /**
+     * Mot qui rend conditionnelle une demande LOAD_COMMAND ou STREAM_LOAD_COMMAND : la session est suivie de ce mot
+     * et de la version de la liste déjà gardée par le client (par exemple "CHARGER Automne SI_DIFFERENT 3f2a..." ou
+     * "-" sans liste). Le serveur répond d'abord par une trame VERSION_CHECK, suivie de la liste seulement si elle a
+     * changé.
+     */
+    public final static String IF_NOT_VERSION = "SI_DIFFERENT";
+
+    /**
+     * Nombre maximal de cours d'une page demandée avec LOAD_COMMAND.
+     */
+    public final static int MAX_LOAD_PAGE_SIZE = 1000;
+
+    /**
+     * Commande de recherche de cours par préfixe de code ou par mots du nom, suivie de la session, du numéro de
+     * page et du texte recherché (par exemple "CHERCHER Automne 0 IFT2").
+     */
+    public final static String SEARCH_COMMAND = "CHERCHER";
+
+    /**
+     * Nombre de cours d'une page de résultats de recherche.
+     */
+    public final static int SEARCH_PAGE_SIZE = 20;
+
+    /**
+     * Commande qui renvoie au client le rapport texte des mesures du serveur.
+     */
+    public final static String METRICS_COMMAND = "STATS";
+
+    /**
+     * Nombre maximal de formulaires d'une inscription en lot.
+     */
+    public final static int MAX_BATCH_SIZE = 16;
+
+    /**
+     * Taille par défaut de la file d'attente des connexions du socket serveur.
+     */
+    public final static int DEFAULT_BACKLOG = 128;
+
+    /**
+     * Nombre par défaut de threads du bassin de traitement des connexions.
+     */
+    public final static int DEFAULT_WORKERS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * Délai d'inactivité, en millisecondes, après lequel une connexion sans nouvelle commande est fermée.
+     */
+    public final static int IDLE_TIMEOUT = 30000;
+    private final ServerSocketChannel serverChannel;
     private final ServerSocket server;
-    private Socket client;
-    private ObjectInputStream objectInputStream;
-    private ObjectOutputStream objectOutputStream;
-    private final ArrayList<EventHandler> handlers;
+    private final ExecutorService workers;
+    private volatile SelectorEngine selectorEngine;
+    private final Set<ClientConnection> connections = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<ClientConnection> currentConnection = new ThreadLocal<>();
+    private final List<EventHandler> handlers;
+    private final List<AsyncEventHandler> asyncHandlers = new CopyOnWriteArrayList<>();
+    private final CourseCatalog catalog = new CourseCatalog(CourseCatalog.coursesFile());
+    private final ResponseCache responseCache = new ResponseCache(catalog);
+    private final RegistrationLog registrationLog;
+    private final RegistrationStore registrationStore;
+    private final CourseSeats courseSeats;
+    private final ServerMetrics metrics;
+    private volatile AdmissionControl admission;
+    private volatile WaitingRoom waitingRoom;
+    private final ScheduledExecutorService waitingTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "waiting-room");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile boolean running = true;
+    private final static ServerLog LOG = ServerLog.get();
 
     /**
      * Constructeur de la classe Server.
+     * Le serveur utilise la file d'attente et le bassin de threads par défaut.
      * @param port Le port sur lequel le serveur écoute.
      * @throws IOException En cas d'erreur lors de la création du serveur socket.
      */
     public Server(int port) throws IOException {
-        this.server = new ServerSocket(port, 1);
-        this.handlers = new ArrayList<EventHandler>();
-        this.addEventHandler(this::handleEvents);
+        this(port, DEFAULT_BACKLOG, DEFAULT_WORKERS, false);
+    }
+
+    /**
+     * Constructeur de la classe Server.
+     * @param port Le port sur lequel le serveur écoute.
+     * @param backlog La taille de la file d'attente des connexions pas encore acceptées.
+     * @param workers Le nombre de threads du bassin borné (ignoré avec les threads virtuels).
+     * @param virtualThreads true pour traiter chaque connexion dans un thread virtuel, false pour le bassin borné.
+     * @throws IOException En cas d'erreur lors de la création du serveur socket.
+     */
+    public Server(int port, int backlog, int workers, boolean virtualThreads) throws IOException {
+        this(port, backlog, workers, virtualThreads, new RegistrationLog(Paths.get(RegistrationLog.REGISTRATIONS_FILE)));
+    }
+
+    /**
+     * Constructeur de la classe Server.
+     * @param port Le port sur lequel le serveur écoute.
+     * @param backlog La taille de la file d'attente des connexions pas encore acceptées.
+     * @param workers Le nombre de threads du bassin borné (ignoré avec les threads virtuels).
+     * @param virtualThreads true pour traiter chaque connexion dans un thread virtuel, false pour le bassin borné.
+     * @param registrationLog Le journal où les inscriptions sont enregistrées, fermé avec le serveur, ou dès le
+     * constructeur si le serveur ne peut pas être créé.
+     * @throws IOException En cas d'erreur lors de la création du serveur socket, par exemple si le port est déjà
+     * utilisé, ou lors de la lecture des inscriptions.
+     */
+    public Server(int port, int backlog, int workers, boolean virtualThreads,
+                  RegistrationLog registrationLog) throws IOException {
+        this.registrationLog = registrationLog;
+        // Le port est réservé avant d'ouvrir les autres ressources. Si une étape échoue, tout ce qui a déjà été ouvert
+        // ou démarré est fermé : le socket, le journal, l'index des inscriptions, l'enregistrement JMX, le thread de
+        // surveillance du catalogue et les threads du serveur
+        ServerSocketChannel channel = null;
+        RegistrationStore store = null;
+        ServerMetrics serverMetrics = null;
+        ExecutorService executor = null;
+        try {
+            channel = ServerSocketChannel.open();
+            channel.bind(new InetSocketAddress(port), backlog);
+            store = new RegistrationStore(registrationLog);
+            this.serverChannel = channel;
+            this.server = channel.socket();
+            this.registrationStore = store;
+            this.courseSeats = new CourseSeats(catalog, store);
+            serverMetrics = new ServerMetrics(registrationLog.getWriteLatency(),
+                    LOAD_COMMAND, STREAM_LOAD_COMMAND, REGISTER_COMMAND, BATCH_REGISTER_COMMAND, SEARCH_COMMAND,
+                    METRICS_COMMAND);
+            this.metrics = serverMetrics;
+            this.metrics.registerInBackground(server.getLocalPort());
+            this.metrics.setCourseCatalog(catalog);
+            this.catalog.watch();
+            this.setAdmissionControl(new AdmissionControl());
+            executor = virtualThreads ? newVirtualThreadExecutor() : newBoundedExecutor(workers);
+            this.workers = executor;
+            this.handlers = new CopyOnWriteArrayList<EventHandler>();
+            this.addEventHandler(this::handleEvents);
+        } catch (IOException | RuntimeException | Error e) {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            catalog.close();
+            if (serverMetrics != null) {
+                // Un enregistrement JMX encore en cours dans son thread n'aura pas lieu
+                serverMetrics.unregister();
+            }
+            waitingTimer.shutdownNow();
+            if (store != null) {
+                closeOnFailure(store, e);
+            }
+            if (channel != null) {
+                closeOnFailure(channel, e);
+            }
+            closeOnFailure(registrationLog, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Ferme une ressource ouverte par un constructeur qui échoue, sans masquer l'erreur qui a fait échouer le
+     * constructeur.
+     */
+    private static void closeOnFailure(Closeable resource, Throwable failure) {
+        try {
+            resource.close();
+        } catch (IOException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Crée un bassin borné de threads de plateforme.
+     * La file de tâches est bornée elle aussi : une connexion refusée est fermée plutôt que mise en attente sans limite.
+     * @param size Le nombre de threads du bassin.
+     * @return Le bassin de threads.
+     */
+    private static ExecutorService newBoundedExecutor(int size) {
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(size * 4),
+                r -> {
+                    Thread t = new Thread(r, "server-worker-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * Crée un exécuteur qui lance un thread virtuel par connexion.
+     * Les threads virtuels n'existent qu'à partir de Java 21 : l'exécuteur est donc obtenu par réflexion, et un
+     * bassin de threads non borné est utilisé sur une JVM plus ancienne.
+     * @return L'exécuteur des connexions.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            LOG.warn("Threads virtuels non disponibles, utilisation d'un thread par connexion.");
+            return Executors.newCachedThreadPool();
+        }
     }
 
     /**
@@ -53,165 +278,884 @@ public class Server {
         this.handlers.add(h);
     }
 
+    /**
+     * Ajoute un EventHandler appelé de façon asynchrone, dans son propre thread et avec sa propre file bornée.
+     * Le handler ne retarde pas la réponse au client; son retard est suivi dans les mesures du serveur.
+     * @param name Le nom du handler, unique pour ce serveur.
+     * @param h L'objet EventHandler à ajouter.
+     * @param capacity Le nombre maximal d'événements en attente, au-delà duquel les événements sont perdus.
+     * @return Le handler asynchrone ajouté, qui donne accès à ses mesures.
+     */
+    public AsyncEventHandler addAsyncEventHandler(String name, EventHandler h, int capacity) {
+        AsyncEventHandler async = new AsyncEventHandler(name, h, capacity);
+        this.asyncHandlers.add(async);
+        this.metrics.addAsyncHandler(async);
+        this.handlers.add(async);
+        return async;
+    }
+
+    /**
+     * Remplace le contrôle d'admission du serveur, par exemple par AdmissionControl.unlimited() pour un test de
+     * charge local.
+     * @param admission Le contrôle d'admission appliqué aux prochaines connexions et requêtes.
+     */
+    public void setAdmissionControl(AdmissionControl admission) {
+        this.admission = admission;
+        this.metrics.setAdmissionControl(admission);
+    }
+
+    /**
+     * Obtient le contrôle d'admission du serveur.
+     * @return Le contrôle d'admission appliqué aux connexions et aux requêtes.
+     */
+    public AdmissionControl getAdmissionControl() {
+        return admission;
+    }
+
+    /**
+     * Ouvre ou ferme la salle d'attente des inscriptions. Lorsqu'elle est ouverte, chaque demande INSCRIRE ou
+     * INSCRIRE_LOT attend son tour dans la file, au débit de la salle, et le client reçoit sa position pendant
+     * l'attente.
+     * @param waitingRoom La salle d'attente, ou null pour traiter les inscriptions dès leur arrivée.
+     */
+    public void setWaitingRoom(WaitingRoom waitingRoom) {
+        this.waitingRoom = waitingRoom;
+        this.metrics.setWaitingRoom(waitingRoom);
+    }
+
     /**
      * Alerte les EventHandlers en appelant leur méthode handle avec les arguments spécifiés.
+     * Les handlers synchrones, dont handleEvents, sont appelés dans le thread courant; les handlers asynchrones
+     * ne font que recevoir l'événement dans leur file.
      * @param cmd La commande à traiter.
      * @param arg L'argument associé à la commande.
      */
     private void alertHandlers(String cmd, String arg) {
+        long start = System.nanoTime();
         for (EventHandler h : this.handlers) {
             h.handle(cmd, arg);
         }
+        metrics.command(cmd).recordHandlers(System.nanoTime() - start);
     }
 
     /**
      * Méthode principale pour exécuter le serveur.
-     * Le serveur écoute en continu sur le port spécifié et traite les commandes des clients.
+     * Le serveur accepte en continu les connexions sur le port spécifié et confie chacune à l'exécuteur,
+     * jusqu'à l'appel de shutdown().
      */
     public void run() {
-        while (true) {
+        while (running) {
+            Socket client;
             try {
                 client = server.accept();
-                System.out.println("Connecté au client: " + client);
-                objectInputStream = new ObjectInputStream(client.getInputStream());
-                objectOutputStream = new ObjectOutputStream(client.getOutputStream());
+            } catch (IOException e) {
+                // Le socket serveur a été fermé par shutdown()
+                if (!running) {
+                    break;
+                }
+                LOG.error("Erreur lors de l'acceptation d'une connexion", e);
+                continue;
+            }
+            metrics.connectionAccepted();
+            if (!admission.admitConnection(client.getInetAddress())) {
+                // Refus immédiat, avant même la poignée de main : la connexion ne coûte aucun thread
+                try {
+                    client.close();
+                } catch (IOException ignored) {
+                    // La connexion est déjà fermée
+                }
+                continue;
+            }
+            ClientConnection connection = new ClientConnection(client, metrics);
+            try {
+                workers.execute(() -> serve(connection));
+            } catch (RejectedExecutionException e) {
+                LOG.warn("Serveur saturé, connexion refusée: " + client);
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    /**
+     * Exécute le serveur avec le moteur non bloquant basé sur un Selector.
+     * Un seul thread accepte, lit et écrit sur toutes les connexions; les commandes complètes sont confiées aux
+     * EventHandlers sur l'exécuteur du serveur. Cette méthode remplace run() et retourne après shutdown().
+     * @throws IOException En cas d'erreur lors de l'ouverture du Selector.
+     */
+    public void runSelector() throws IOException {
+        selectorEngine = new SelectorEngine(this, serverChannel, workers);
+        if (!running) {
+            // shutdown() a été appelé avant que le moteur ne soit créé
+            return;
+        }
+        selectorEngine.run();
+    }
+
+    /**
+     * Traite une commande complète reçue par une connexion, en alertant les EventHandlers dans le thread courant.
+     * @param connection La connexion dont les flux contiennent la requête complète.
+     * @throws IOException En cas d'erreur lors de la lecture ou de l'écriture.
+     * @throws ClassNotFoundException En cas d'erreur de classe non trouvée lors de la désérialisation.
+     */
+    void dispatch(ClientConnection connection) throws IOException, ClassNotFoundException {
+        currentConnection.set(connection);
+        try {
+            listen();
+        } finally {
+            currentConnection.remove();
+        }
+    }
+
+    /**
+     * Traite une connexion client du début à la fin dans le thread courant.
+     * Les commandes du client sont traitées dans l'ordre de leur arrivée.
+     * @param connection La connexion à traiter.
+     */
+    private void serve(ClientConnection connection) {
+        connections.add(connection);
+        metrics.connectionOpened();
+        connection.onResume(() -> serve(connection, false));
+        serve(connection, true);
+    }
+
+    /**
+     * Traite les commandes d'une connexion dans le thread courant, jusqu'à ce que le client la ferme.
+     * Si une requête est reportée (voir ClientConnection.defer()), le thread est libéré et la connexion est reprise
+     * par ClientConnection.resume(), qui rappelle cette méthode.
+     * @param connection La connexion à traiter.
+     * @param open true pour ouvrir la connexion, false pour reprendre une connexion déjà ouverte.
+     */
+    private void serve(ClientConnection connection, boolean open) {
+        boolean released = false;
+        currentConnection.set(connection);
+        try {
+            if (open) {
+                LOG.info("Connecté au client: " + connection);
+                connection.getSocket().setSoTimeout(IDLE_TIMEOUT);
+                connection.open();
+            }
+            // La connexion reste ouverte pour plusieurs commandes, jusqu'à ce que le client la ferme
+            while (running) {
                 listen();
-                disconnect();
-                System.out.println("Client déconnecté!");
-            } catch (Exception e) {
-                e.printStackTrace();
+                if (connection.release()) {
+                    released = true;
+                    return;
+                }
+                connection.flushIfIdle();
+            }
+        } catch (EOFException e) {
+            LOG.info("Client déconnecté: " + connection);
+        } catch (SocketTimeoutException e) {
+            LOG.info("Client inactif déconnecté: " + connection);
+        } catch (Exception e) {
+            if (running) {
+                LOG.error("Erreur sur la connexion " + connection, e);
+            }
+        } finally {
+            currentConnection.remove();
+            if (!released) {
+                connections.remove(connection);
+                metrics.connectionClosed();
+                closeQuietly(connection);
             }
         }
     }
 
     /**
-     * Méthode pour écouter les commandes des clients et les traiter.
+     * Arrête le serveur de façon ordonnée.
+     * Le serveur cesse d'accepter de nouvelles connexions et laisse les connexions en cours se terminer pendant
+     * le délai spécifié. Les connexions encore ouvertes après ce délai sont fermées, de même que celles dont une
+     * inscription attend son tour dans la salle d'attente.
+     * @param timeout Le délai maximal d'attente des connexions en cours.
+     * @param unit L'unité du délai.
+     * @throws InterruptedException Si le thread est interrompu pendant l'attente.
+     */
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        running = false;
+        waitingTimer.shutdownNow();
+        try {
+            server.close();
+        } catch (IOException e) {
+            LOG.error("Erreur lors de la fermeture du socket serveur", e);
+        }
+        SelectorEngine engine = selectorEngine;
+        if (engine != null) {
+            engine.stop();
+        }
+        metrics.unregister();
+        catalog.close();
+        workers.shutdown();
+        boolean terminated = workers.awaitTermination(timeout, unit);
+        // Les connexions qui restent sont encore en cours, ou attendent leur tour dans la salle d'attente
+        for (ClientConnection connection : connections) {
+            closeQuietly(connection);
+        }
+        if (!terminated) {
+            workers.shutdownNow();
+        }
+        for (AsyncEventHandler async : asyncHandlers) {
+            async.shutdown(timeout, unit);
+        }
+        try {
+            registrationLog.close();
+            registrationStore.close();
+        } catch (IOException e) {
+            LOG.error("Erreur lors de la fermeture du journal des inscriptions", e);
+        }
+        LOG.flush(timeout, unit);
+    }
+
+    /**
+     * Obtient les mesures du serveur.
+     * @return Les mesures du serveur, aussi exposées par JMX.
+     */
+    public ServerMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Obtient les inscriptions enregistrées, indexées par cours et par étudiant.
+     * @return Les inscriptions du serveur.
+     */
+    public RegistrationStore getRegistrationStore() {
+        return registrationStore;
+    }
+
+    /**
+     * Obtient la connexion traitée par le thread courant.
+     * @return La connexion du client en cours de traitement.
+     */
+    protected ClientConnection connection() {
+        return currentConnection.get();
+    }
+
+    private static void closeQuietly(ClientConnection connection) {
+        try {
+            connection.close();
+        } catch (IOException ignored) {
+            // La connexion est déjà fermée ou perdue, il n'y a rien d'autre à faire
+        }
+    }
+
+    /**
+     * Méthode pour écouter les commandes du client de la connexion courante et les traiter.
+     * La commande n'est traitée que si le contrôle d'admission l'accepte; sinon, le client est invité à réessayer.
      * @throws IOException En cas d'erreur lors de la lecture ou de l'écriture des objets.
      * @throws ClassNotFoundException En cas d'erreur de classe non trouvée lors de la désérialisation.
      */
     public void listen() throws IOException, ClassNotFoundException {
         String line;
-        if ((line = this.objectInputStream.readObject().toString()) != null) {
-            Pair<String, String> parts = processCommandLine(line);
-            String cmd = parts.getKey();
-            String arg = parts.getValue();
-            this.alertHandlers(cmd, arg);
+        if ((line = connection().readCommand()) != null) {
+            long start = System.nanoTime();
+            // Décodage sans copie de la ligne : seul l'argument est extrait, pour les EventHandlers
+            String cmd = Command.decode(line).commandName(line);
+            String arg = Command.argument(line);
+            AdmissionControl admission = this.admission;
+            int retryAfter = admission.admitRequest(connection().getAddress());
+            if (retryAfter > 0) {
+                reject(cmd, start, retryAfter);
+                return;
+            }
+            try {
+                this.alertHandlers(cmd, arg);
+            } finally {
+                admission.release();
+            }
+            // Une inscription reportée dans la salle d'attente est mesurée lorsqu'elle est terminée
+            if (!connection().isDeferred()) {
+                metrics.command(cmd).recordRequest(System.nanoTime() - start);
+            }
         }
     }
 
     /**
-     * Méthode pour traiter une ligne de commande reçue du client et la diviser en commande et argument.
-     * @param line La ligne de commande à traiter.
-     * @return Un objet Pair contenant la commande et l'argument.
+     * Refuse une commande sans la traiter. Les formulaires qui suivent une commande d'inscription sont lus pour que
+     * la requête suivante du client soit lue correctement.
+     * @param cmd La commande refusée.
+     * @param start Le début de la requête, selon System.nanoTime().
+     * @param retryAfter Le délai conseillé avant de réessayer, en millisecondes.
+     * @throws IOException En cas d'erreur lors de la lecture ou de l'écriture.
+     * @throws ClassNotFoundException En cas d'erreur de classe non trouvée lors de la désérialisation.
      */
-    public Pair<String, String> processCommandLine(String line) {
-        String[] parts = line.split(" ");
-        String cmd = parts[0];
-        String args = String.join(" ", Arrays.asList(parts).subList(1, parts.length));
-        return new Pair<>(cmd, args);
+    private void reject(String cmd, long start, int retryAfter) throws IOException, ClassNotFoundException {
+        ClientConnection connection = connection();
+        if (cmd.equals(REGISTER_COMMAND)) {
+            connection.readForm();
+        } else if (cmd.equals(BATCH_REGISTER_COMMAND)) {
+            connection.readForms();
+        }
+        connection.sendRetryLater(AdmissionControl.RETRY_MESSAGE, retryAfter);
+        LOG.request(cmd, null, null, System.nanoTime() - start, "refuse");
     }
 
     /**
-     * Ferme les flux de sortie et d'entrée ainsi que le socket client.
+     * Ferme les flux de sortie et d'entrée ainsi que le socket du client de la connexion courante.
      * La méthode gère les exceptions si une erreur se produit lors de la fermeture des flux ou du socket.
      * @throws IOException si une erreur se produit lors de la fermeture des flux ou du socket
      */
     public void disconnect() throws IOException {
-        objectOutputStream.close();
-        objectInputStream.close();
-        client.close();
+        connection().close();
     }
 
     /**
      * Gère les événements reçus du client en fonction de la commande (cmd) et de l'argument (arg) reçus.
      * Si la commande est REGISTER_COMMAND, appelle la méthode handleRegistration().
+     * Si la commande est BATCH_REGISTER_COMMAND, appelle la méthode handleBatchRegistration().
+     * Si la commande est METRICS_COMMAND, appelle la méthode handleMetrics().
      * Si la commande est LOAD_COMMAND, appelle la méthode handleLoadCourses() avec l'argument arg.
+     * Si la commande est STREAM_LOAD_COMMAND, appelle la méthode handleStreamCourses() avec l'argument arg.
+     * Si la commande est SEARCH_COMMAND, appelle la méthode handleSearch() avec l'argument arg.
      * @param cmd la commande reçue du client
      * @param arg l'argument reçu du client
      */
     public void handleEvents(String cmd, String arg) {
         if (cmd.equals(REGISTER_COMMAND)) {
             handleRegistration();
+        } else if (cmd.equals(BATCH_REGISTER_COMMAND)) {
+            handleBatchRegistration();
+        } else if (cmd.equals(METRICS_COMMAND)) {
+            handleMetrics();
         } else if (cmd.equals(LOAD_COMMAND)) {
             handleLoadCourses(arg);
+        } else if (cmd.equals(STREAM_LOAD_COMMAND)) {
+            handleStreamCourses(arg);
+        } else if (cmd.equals(SEARCH_COMMAND)) {
+            handleSearch(arg);
         }
     }
 
     /**
-     Lire un fichier texte contenant des informations sur les cours et les transofmer en liste d'objets 'Course'.
-     La méthode filtre les cours par la session spécifiée en argument.
-     Ensuite, elle renvoie la liste des cours pour une session au client en utilisant l'objet 'objectOutputStream'.
-     La méthode gère les exceptions si une erreur se produit lors de la lecture du fichier ou de l'écriture de l'objet dans le flux.
-     @param arg la session pour laquelle on veut récupérer la liste des cours
+     Obtenir la liste des cours de la session spécifiée en argument à partir du catalogue en mémoire, qui lit le
+     fichier texte des cours une seule fois et le relit seulement lorsqu'il est modifié.
+     Ensuite, elle renvoie au client la liste des cours déjà encodée pour cette session, en copiant directement
+     ses octets dans le flux de sortie de la connexion.
+     Avec le protocole binaire, une liste trop longue pour une seule trame est envoyée en pages, comme avec
+     STREAM_LOAD_COMMAND.
+     Si la session est suivie d'une position et d'un nombre de cours, seule cette page est renvoyée, avec le nombre
+     total de cours de la session (voir CourseIndex.Page).
+     Si la session est suivie de IF_NOT_VERSION et d'une version, la liste n'est renvoyée que si elle a changé.
+     La méthode gère les exceptions si une erreur se produit lors de l'écriture dans le flux.
+     @param arg la session pour laquelle on veut récupérer la liste des cours, suivie ou non de la position et du
+     nombre de cours de la page, ou de la version déjà gardée par le client
      */
     public void handleLoadCourses(String arg){
+        long start = System.nanoTime();
+        String outcome = "ok";
+        String[] parts = arg.split(" ");
+        String session = parts[0];
+        try {
+            ClientConnection connection = connection();
+            if (isConditional(parts, connection) && !sendVersion(connection, session, parts[2])) {
+                outcome = "non_modifie";
+            } else if (parts.length == 3 && !parts[1].equals(IF_NOT_VERSION)) {
+                CourseIndex.Page page;
+                try {
+                    page = loadPage(session, parts[1], parts[2]);
+                } catch (NumberFormatException e) {
+                    outcome = "requete_invalide";
+                    page = CourseIndex.Page.EMPTY;
+                }
+                connection.sendCoursePage(page);
+            } else if (connection.getProtocol() == ClientConnection.Protocol.BINARY
+                    && !responseCache.fitsInFrame(session)) {
+                // Liste trop longue pour une trame : le client la reçoit en pages (voir BinaryProtocol.readCourseList())
+                for (byte[] chunk : responseCache.getCourseChunks(session)) {
+                    connection.writeEncoded(chunk);
+                }
+            } else {
+                // Liste des cours de la session, sérialisée une seule fois par version du catalogue
+                byte[] courses = responseCache.getCourses(session, connection.getProtocol());
+
+                // Envoi de la liste des cours au client via le flux de sortie de sa connexion
+                connection.writeEncoded(courses);
+            }
+        } catch (IOException e) {
+            outcome = "erreur";
+            metrics.command(LOAD_COMMAND).error();
+            LOG.error("Erreur lors de l'envoi des cours de la session " + session, e);
+        } finally {
+            long latency = System.nanoTime() - start;
+            metrics.command(LOAD_COMMAND).recordProcessing(latency);
+            LOG.request(LOAD_COMMAND, session, null, latency, outcome);
+        }
+    }
+
+    /**
+     * Indique si une demande de chargement est conditionnelle. Seul le protocole binaire supporte ces demandes :
+     * un ancien client reçoit toujours la liste.
+     */
+    private static boolean isConditional(String[] parts, ClientConnection connection) {
+        return parts.length == 3 && parts[1].equals(IF_NOT_VERSION)
+                && connection.getProtocol() == ClientConnection.Protocol.BINARY;
+    }
+
+    /**
+     * Envoie la version courante de la liste des cours d'une session en réponse à une demande conditionnelle.
+     * @return true si la liste a changé et doit suivre, false si la version du client est à jour.
+     */
+    private boolean sendVersion(ClientConnection connection, String session, String clientVersion) throws IOException {
+        String version = responseCache.getVersion(session);
+        boolean modified = !version.equals(clientVersion);
+        connection.sendVersion(version, modified);
+        return modified;
+    }
+
+    /**
+     * Construit une page de la liste des cours d'une session, sans copier les cours hors de la page.
+     */
+    private CourseIndex.Page loadPage(String session, String offset, String limit) {
+        ArrayList<Course> courses = catalog.getCourses(session);
+        int from = Math.max(0, Math.min(Integer.parseInt(offset), courses.size()));
+        int count = Math.max(0, Math.min(Integer.parseInt(limit), MAX_LOAD_PAGE_SIZE));
+        int to = Math.min(courses.size(), from + count);
+        return new CourseIndex.Page(courses.size(), from, new ArrayList<>(courses.subList(from, to)));
+    }
+
+    /**
+     Envoyer au client la liste des cours de la session en flux : une page de ResponseCache.CHUNK_SIZE cours à la
+     fois, chacune déjà encodée par le cache et envoyée dès qu'elle est écrite. Le client peut afficher les premiers
+     cours sans attendre la fin de la liste, et la mémoire utilisée par requête ne dépend pas de la taille du
+     catalogue. Un ancien client, qui utilise la sérialisation Java, reçoit la liste complète comme avec CHARGER.
+     Si la session est suivie de IF_NOT_VERSION et d'une version, la liste n'est renvoyée que si elle a changé.
+     La méthode gère les exceptions si une erreur se produit lors de l'écriture dans le flux.
+     @param arg la session pour laquelle on veut récupérer la liste des cours, suivie ou non de la version déjà
+     gardée par le client
+     */
+    public void handleStreamCourses(String arg) {
+        long start = System.nanoTime();
+        String outcome = "ok";
+        String[] parts = arg.split(" ");
+        String session = parts[0];
         try {
-            // Lecture du fichier cours.txt dans le dossier "data"
-            BufferedReader reader = new BufferedReader(new FileReader("src/main/java/server/data/cours.txt"));
-            String line;
-            ArrayList<Course> courses = new ArrayList<>();
-
-            // Parcours du fichier ligne par ligne
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\t");
-                String code = parts[0];
-                String name = parts[1];
-                String session = parts[2];
-
-                // Filtrage des cours selon la session spécifiée en argument
-                if (session.equalsIgnoreCase(arg)) {
-                    Course course = new Course(name, code, session);
-                    courses.add(course);
+            ClientConnection connection = connection();
+            if (isConditional(parts, connection) && !sendVersion(connection, session, parts[2])) {
+                outcome = "non_modifie";
+            } else if (connection.getProtocol() == ClientConnection.Protocol.BINARY) {
+                for (byte[] chunk : responseCache.getCourseChunks(session)) {
+                    connection.writeEncoded(chunk);
+                    connection.flush();
                 }
+            } else {
+                connection.writeEncoded(responseCache.getCourses(session, connection.getProtocol()));
             }
+        } catch (IOException e) {
+            outcome = "erreur";
+            metrics.command(STREAM_LOAD_COMMAND).error();
+            LOG.error("Erreur lors de l'envoi en flux des cours de la session " + session, e);
+        } finally {
+            long latency = System.nanoTime() - start;
+            metrics.command(STREAM_LOAD_COMMAND).recordProcessing(latency);
+            LOG.request(STREAM_LOAD_COMMAND, session, null, latency, outcome);
+        }
+    }
 
-            reader.close();
+    /**
+     Rechercher des cours d'une session dans l'index du catalogue en mémoire, par préfixe de code ou par mots du
+     nom (voir CourseIndex), et renvoyer au client une page d'au plus SEARCH_PAGE_SIZE résultats avec le nombre
+     total de résultats. Seule la page demandée est envoyée, plutôt que la liste complète des cours de la session.
+     La méthode gère les exceptions si une erreur se produit lors de l'écriture dans le flux.
+     @param arg la session, le numéro de page (à partir de 0) et le texte recherché, séparés par des espaces
+     */
+    public void handleSearch(String arg) {
+        long start = System.nanoTime();
+        String outcome = "ok";
+        String[] parts = arg.split(" ", 3);
+        String session = parts[0];
+        try {
+            CourseIndex.Page page = CourseIndex.Page.EMPTY;
+            if (parts.length >= 2) {
+                try {
+                    int number = Math.max(0, Integer.parseInt(parts[1]));
+                    String query = parts.length == 3 ? parts[2] : "";
+                    page = catalog.getSnapshot().getIndex(session)
+                            .search(query, (int) Math.min(Integer.MAX_VALUE, (long) number * SEARCH_PAGE_SIZE),
+                                    SEARCH_PAGE_SIZE);
+                } catch (NumberFormatException e) {
+                    outcome = "requete_invalide";
+                }
+            } else {
+                outcome = "requete_invalide";
+            }
+            connection().sendCoursePage(page);
+        } catch (IOException e) {
+            outcome = "erreur";
+            metrics.command(SEARCH_COMMAND).error();
+            LOG.error("Erreur lors de l'envoi des résultats de recherche de la session " + session, e);
+        } finally {
+            long latency = System.nanoTime() - start;
+            metrics.command(SEARCH_COMMAND).recordProcessing(latency);
+            LOG.request(SEARCH_COMMAND, session, null, latency, outcome);
+        }
+    }
 
-            // Envoi de la liste des cours au client via objectOutputStream
-            objectOutputStream.writeObject(courses);
-            objectOutputStream.flush();
+    /**
+     Renvoyer au client le rapport texte des mesures du serveur : connexions, octets, latences par commande et
+     latence d'écriture du fichier des inscriptions. Le même rapport est disponible par JMX.
+     La méthode gère les exceptions si une erreur se produit lors de l'écriture dans le flux.
+     */
+    public void handleMetrics() {
+        try {
+            connection().sendMessage(metrics.dump());
         } catch (IOException e) {
-            e.printStackTrace();
+            metrics.command(METRICS_COMMAND).error();
+            LOG.error("Erreur lors de l'envoi des mesures", e);
         }
     }
 
     /**
-     Récupérer l'objet 'RegistrationForm' envoyé par le client en utilisant 'objectInputStream', l'enregistrer dans un fichier texte
-     et renvoyer un message de confirmation au client.
+     Récupérer l'objet 'RegistrationForm' envoyé par le client sur sa connexion, l'ajouter au journal des
+     inscriptions et renvoyer un message de confirmation au client (voir register()).
      La méthode gère les exceptions si une erreur se produit lors de la lecture de l'objet, l'écriture dans un fichier ou dans le flux de sortie.
      */
     public void handleRegistration() {
+        long start = System.nanoTime();
+        boolean deferred = false;
         try {
-            // Récupération de l'objet 'RegistrationForm' envoyé par le client en utilisant 'objectInputStream'
-            RegistrationForm form = (RegistrationForm) objectInputStream.readObject();
+            // Récupération de l'objet 'RegistrationForm' envoyé par le client sur sa connexion
+            ClientConnection connection = connection();
+            RegistrationForm form = connection.readForm();
 
-            // Création d'une chaîne de caractères contenant les informations de l'objet 'RegistrationForm'
-            String output = form.getCourse().getSession() + "\t" +
-                    form.getCourse().getCode() + "\t" +
-                    form.getMatricule() + "\t" +
-                    form.getPrenom() + "\t" +
-                    form.getNom() + "\t" +
-                    form.getEmail();
+            deferred = awaitTurn(REGISTER_COMMAND, start, () -> connection.sendMessage(register(form)));
 
-            // Création d'un objet 'PrintWriter' pour écrire dans un fichier texte
-            // Le paramètre 'true' dans le constructeur indique que le fichier sera ouvert en mode append
-            PrintWriter pw = new PrintWriter(new FileWriter("src/main/java/server/data/inscription.txt", true));
-
-            // Écriture de la chaîne de caractères dans le fichier
-            pw.println(output);
+        } catch (IOException e) {
+            // Gestion de l'exception IOException en enregistrant la trace de la pile d'exécution
+            metrics.command(REGISTER_COMMAND).error();
+            LOG.error("Erreur lors de l'inscription", e);
+        } catch (ClassNotFoundException e) {
+            // Gestion de l'exception ClassNotFoundException en enregistrant un message d'erreur
+            metrics.command(REGISTER_COMMAND).error();
+            LOG.warn("Classe n'a pas été trouvée: " + e.getMessage());
+        } finally {
+            if (!deferred) {
+                metrics.command(REGISTER_COMMAND).recordProcessing(System.nanoTime() - start);
+            }
+        }
+    }
 
-            // Fermeture du 'PrintWriter'
-            pw.close();
+    /**
+     Récupérer la liste de formulaires envoyée par le client avec la commande INSCRIRE_LOT, enregistrer toutes les
+     inscriptions valides en une seule écriture durable et renvoyer au client un message par formulaire, dans
+     l'ordre des formulaires.
+     La méthode gère les exceptions si une erreur se produit lors de la lecture des objets, l'écriture dans un fichier ou dans le flux de sortie.
+     */
+    public void handleBatchRegistration() {
+        long start = System.nanoTime();
+        boolean deferred = false;
+        try {
+            // Récupération de la liste des formulaires envoyée par le client sur sa connexion
+            ClientConnection connection = connection();
+            List<RegistrationForm> forms;
+            try {
+                forms = connection.readForms();
+            } catch (ProtocolException e) {
+                // Trame refusée avant d'être décodée, par exemple un lot de plus de MAX_BATCH_SIZE formulaires : la
+                // trame est lue en entier, la connexion reste utilisable et le client reçoit une réponse
+                LOG.request(BATCH_REGISTER_COMMAND, null, null, System.nanoTime() - start, "lot_invalide");
+                connection.sendMessages(Collections.singletonList("Erreur: l'inscription en lot est invalide ou "
+                        + "contient plus de " + MAX_BATCH_SIZE + " cours."));
+                return;
+            }
 
-            objectOutputStream.writeObject("Félicitations! Inscription réussie de " + form.getPrenom() + " au cours " + form.getCourse().getCode() + ".");
+            deferred = awaitTurn(BATCH_REGISTER_COMMAND, start, () -> connection.sendMessages(registerAll(forms)));
 
         } catch (IOException e) {
-            // Gestion de l'exception IOException en affichant la trace de la pile d'exécution
-            e.printStackTrace();
+            metrics.command(BATCH_REGISTER_COMMAND).error();
+            LOG.error("Erreur lors de l'inscription en lot", e);
         } catch (ClassNotFoundException e) {
-            // Gestion de l'exception ClassNotFoundException en affichant un message d'erreur
-            System.out.println("Classe n'a pas été trouvée");
+            metrics.command(BATCH_REGISTER_COMMAND).error();
+            LOG.warn("Classe n'a pas été trouvée: " + e.getMessage());
+        } finally {
+            if (!deferred) {
+                metrics.command(BATCH_REGISTER_COMMAND).recordProcessing(System.nanoTime() - start);
+            }
         }
     }
-}
 
+    /**
+     Faire attendre à une demande d'inscription son tour dans la salle d'attente, si elle est ouverte, puis envoyer
+     l'inscription au client. Si son tour n'est pas arrivé, le client reçoit sa position dans la file et le temps
+     d'attente estimé, et la requête est reportée (voir ClientConnection.defer()) : le thread courant et la place de
+     la requête dans le contrôle d'admission sont libérés, seule la capacité de la salle borne le nombre de demandes
+     en attente. La suite de l'attente est confiée à PendingRegistration.
+     Si la salle est pleine, le client est invité à réessayer plus tard.
+     @param cmd la commande d'inscription en attente
+     @param start le début du traitement, selon System.nanoTime()
+     @param registration l'envoi de l'inscription au client
+     @return true si la requête est reportée, false si elle est terminée
+     @throws IOException si une erreur se produit lors de l'écriture dans le flux
+     */
+    private boolean awaitTurn(String cmd, long start, Registration registration) throws IOException {
+        WaitingRoom room = this.waitingRoom;
+        if (room == null) {
+            registration.send();
+            return false;
+        }
+        WaitingRoom.Ticket ticket = room.enter();
+        if (ticket == null) {
+            connection().sendRetryLater(WaitingRoom.FULL_MESSAGE, room.getRetryAfter());
+            LOG.request(cmd, null, null, System.nanoTime() - start, "salle_pleine");
+            return false;
+        }
+        int position = ticket.getPosition();
+        if (position == 0) {
+            ticket.leave();
+            registration.send();
+            return false;
+        }
+        ClientConnection connection = connection();
+        try {
+            connection.sendQueuePosition(position, ticket.getEstimatedWait());
+        } catch (IOException e) {
+            ticket.leave();
+            throw e;
+        }
+        connection.defer();
+        new PendingRegistration(connection, ticket, cmd, start, registration).scheduleNext();
+        return true;
+    }
+
+    /**
+     * Envoi au client d'une inscription, lorsque son tour est arrivé.
+     */
+    private interface Registration {
+        void send() throws IOException;
+    }
+
+    /**
+     * Demande d'inscription reportée dans la salle d'attente.
+     * Le minuteur de la salle d'attente vérifie son tour au plus toutes les WaitingRoom.UPDATE_INTERVAL
+     * millisecondes et confie chaque vérification à l'exécuteur du serveur : tant que le tour n'est pas arrivé, la
+     * position est renvoyée au client, même si elle n'a pas changé, ce qui relance aussi son délai de lecture; au
+     * tour de la demande, l'inscription est envoyée et la connexion est reprise (voir ClientConnection.resume()).
+     * Aucun thread n'attend entre deux vérifications.
+     */
+    private final class PendingRegistration {
+        private final ClientConnection connection;
+        private final WaitingRoom.Ticket ticket;
+        private final String cmd;
+        private final long start;
+        private final Registration registration;
+
+        private PendingRegistration(ClientConnection connection, WaitingRoom.Ticket ticket, String cmd, long start,
+                                    Registration registration) {
+            this.connection = connection;
+            this.ticket = ticket;
+            this.cmd = cmd;
+            this.start = start;
+            this.registration = registration;
+        }
+
+        private void scheduleNext() {
+            // Le temps d'attente estimé est arrondi à la milliseconde inférieure
+            schedule(Math.min(WaitingRoom.UPDATE_INTERVAL, ticket.getEstimatedWait() + 1));
+        }
+
+        private void schedule(long delay) {
+            try {
+                waitingTimer.schedule(this::submit, delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Le serveur est arrêté
+                abandon();
+            }
+        }
+
+        private void submit() {
+            try {
+                workers.execute(this::advance);
+            } catch (RejectedExecutionException e) {
+                if (running) {
+                    // Bassin saturé : la vérification est reprise un peu plus tard
+                    schedule(WaitingRoom.UPDATE_INTERVAL / 10);
+                } else {
+                    abandon();
+                }
+            }
+        }
+
+        private void advance() {
+            int position = ticket.getPosition();
+            if (position > 0) {
+                try {
+                    connection.sendQueuePosition(position, ticket.getEstimatedWait());
+                } catch (IOException e) {
+                    // Le client ne lit plus : la demande quitte la file, et le moteur constate la déconnexion
+                    LOG.info("Client déconnecté pendant l'attente: " + connection);
+                    ticket.leave();
+                    metrics.command(cmd).error();
+                    connection.resume();
+                    return;
+                }
+                scheduleNext();
+                return;
+            }
+            ticket.leave();
+            try {
+                registration.send();
+                connection.flushIfIdle();
+            } catch (IOException e) {
+                metrics.command(cmd).error();
+                LOG.error("Erreur lors de l'inscription", e);
+            } finally {
+                long latency = System.nanoTime() - start;
+                metrics.command(cmd).recordProcessing(latency);
+                metrics.command(cmd).recordRequest(latency);
+            }
+            connection.resume();
+        }
+
+        private void abandon() {
+            ticket.leave();
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     Enregistrer une inscription et construire le message à renvoyer au client.
+     Une inscription déjà enregistrée pour le même matricule, le même cours et la même session est refusée sans
+     être écrite, de même qu'une inscription à un cours complet ou absent du catalogue. Une place est réservée dans
+     le cours avant l'écriture et libérée si l'inscription n'est finalement pas enregistrée. Le journal regroupe les
+     inscriptions reçues en même temps dans une seule écriture : la confirmation n'est produite qu'une fois
+     l'inscription durable, et un message d'erreur est produit si elle n'a pas pu être écrite.
+     @param form le formulaire d'inscription reçu du client
+     @return le message de confirmation ou d'erreur
+     */
+    private String register(RegistrationForm form) {
+        long start = System.nanoTime();
+        String session = form.getCourse().getSession();
+        String code = form.getCourse().getCode();
+        if (admission.admitMatricule(form.getMatricule()) > 0) {
+            return reply(REGISTER_COMMAND, form, start, "refuse", AdmissionControl.RETRY_MESSAGE);
+        }
+        // Un cours absent du catalogue n'a ni capacité ni place à réserver : il n'est jamais enregistré
+        if (!catalog.contains(session, code)) {
+            return reply(REGISTER_COMMAND, form, start, "inconnu", unknownCourse(session, code));
+        }
+        if (registrationStore.contains(session, code, form.getMatricule())) {
+            return reply(REGISTER_COMMAND, form, start, "doublon",
+                    "Erreur: " + form.getMatricule() + " est déjà inscrit au cours " + code + ".");
+        }
+        // Réservation d'une place sans verrou, avant l'écriture de l'inscription
+        if (!courseSeats.tryReserve(session, code)) {
+            return reply(REGISTER_COMMAND, form, start, "complet", "Erreur: le cours " + code + " est complet.");
+        }
+
+        // Ajout de l'inscription au journal, s'il ne s'agit pas d'un doublon, puis attente de son écriture sur le disque
+        boolean added;
+        try {
+            added = registrationStore.register(form).join();
+        } catch (CompletionException e) {
+            courseSeats.release(session, code);
+            metrics.command(REGISTER_COMMAND).error();
+            LOG.error("Erreur lors de l'écriture de l'inscription", e.getCause());
+            return reply(REGISTER_COMMAND, form, start, "erreur",
+                    "Erreur: l'inscription n'a pas pu être enregistrée. Veuillez réessayer.");
+        }
+        if (!added) {
+            // Une inscription identique a été enregistrée entre-temps par une autre connexion
+            courseSeats.release(session, code);
+            return reply(REGISTER_COMMAND, form, start, "doublon",
+                    "Erreur: " + form.getMatricule() + " est déjà inscrit au cours " + code + ".");
+        }
+
+        return reply(REGISTER_COMMAND, form, start, "ok",
+                "Félicitations! Inscription réussie de " + form.getPrenom() + " au cours " + code + ".");
+    }
+
+    /**
+     Enregistrer plusieurs inscriptions en une seule écriture et construire le message de chaque formulaire.
+     Chaque formulaire est validé comme avec register() : cours inconnu, doublon et cours complet sont refusés avant
+     l'écriture.
+     Les inscriptions acceptées sont ensuite écrites ensemble et deviennent durables ensemble; si l'écriture échoue,
+     aucune n'est enregistrée et leurs places sont libérées.
+     @param forms les formulaires d'inscription reçus du client
+     @return un message de confirmation ou d'erreur par formulaire, dans le même ordre
+     */
+    private List<String> registerAll(List<RegistrationForm> forms) {
+        long start = System.nanoTime();
+        String[] messages = new String[forms.size()];
+        if (forms.size() > MAX_BATCH_SIZE) {
+            LOG.request(BATCH_REGISTER_COMMAND, null, null, System.nanoTime() - start, "lot_trop_grand");
+            Arrays.fill(messages, "Erreur: une inscription en lot ne peut pas contenir plus de " + MAX_BATCH_SIZE + " cours.");
+            return Arrays.asList(messages);
+        }
+
+        // Validation de chaque formulaire et réservation d'une place dans son cours. Un lot ne coûte qu'un jeton à
+        // chaque matricule qu'il contient, comme une seule demande d'inscription.
+        List<Integer> accepted = new ArrayList<>();
+        List<RegistrationForm> toRegister = new ArrayList<>();
+        Map<String, Boolean> admitted = new HashMap<>();
+        for (int i = 0; i < forms.size(); i++) {
+            RegistrationForm form = forms.get(i);
+            String session = form.getCourse().getSession();
+            String code = form.getCourse().getCode();
+            if (!admitted.computeIfAbsent(form.getMatricule(), m -> admission.admitMatricule(m) == 0)) {
+                messages[i] = reply(BATCH_REGISTER_COMMAND, form, start, "refuse", AdmissionControl.RETRY_MESSAGE);
+            } else if (!catalog.contains(session, code)) {
+                messages[i] = reply(BATCH_REGISTER_COMMAND, form, start, "inconnu", unknownCourse(session, code));
+            } else if (registrationStore.contains(session, code, form.getMatricule())) {
+                messages[i] = reply(BATCH_REGISTER_COMMAND, form, start, "doublon",
+                        "Erreur: " + form.getMatricule() + " est déjà inscrit au cours " + code + ".");
+            } else if (!courseSeats.tryReserve(session, code)) {
+                messages[i] = reply(BATCH_REGISTER_COMMAND, form, start, "complet",
+                        "Erreur: le cours " + code + " est complet.");
+            } else {
+                accepted.add(i);
+                toRegister.add(form);
+            }
+        }
+
+        // Écriture de toutes les inscriptions acceptées d'un seul coup, puis attente de leur écriture sur le disque
+        boolean[] added;
+        try {
+            added = registrationStore.registerAll(toRegister).join();
+        } catch (CompletionException e) {
+            metrics.command(BATCH_REGISTER_COMMAND).error();
+            LOG.error("Erreur lors de l'écriture des inscriptions en lot", e.getCause());
+            added = null;
+        }
+        for (int j = 0; j < toRegister.size(); j++) {
+            RegistrationForm form = toRegister.get(j);
+            String code = form.getCourse().getCode();
+            int i = accepted.get(j);
+            if (added == null) {
+                courseSeats.release(form.getCourse().getSession(), code);
+                messages[i] = reply(BATCH_REGISTER_COMMAND, form, start, "erreur",
+                        "Erreur: l'inscription au cours " + code + " n'a pas pu être enregistrée. Veuillez réessayer.");
+            } else if (!added[j]) {
+                // Même cours deux fois dans le lot, ou inscription identique enregistrée entre-temps
+                courseSeats.release(form.getCourse().getSession(), code);
+                messages[i] = reply(BATCH_REGISTER_COMMAND, form, start, "doublon",
+                        "Erreur: " + form.getMatricule() + " est déjà inscrit au cours " + code + ".");
+            } else {
+                messages[i] = reply(BATCH_REGISTER_COMMAND, form, start, "ok",
+                        "Félicitations! Inscription réussie de " + form.getPrenom() + " au cours " + code + ".");
+            }
+        }
+        return Arrays.asList(messages);
+    }
+
+    /**
+     Enregistrer dans le journal du serveur le résultat de l'inscription d'un formulaire, puis retourner le message
+     destiné au client.
+     @param cmd la commande qui a transmis le formulaire
+     @param form le formulaire d'inscription
+     @param start le début du traitement, selon System.nanoTime()
+     @param outcome le résultat : ok, inconnu, doublon, complet, refuse ou erreur
+     @param message le message destiné au client
+     @return le message destiné au client
+     */
+    private String reply(String cmd, RegistrationForm form, long start, String outcome, String message) {
+        LOG.request(cmd, form.getCourse().getSession(), form.getCourse().getCode(), System.nanoTime() - start, outcome);
+        return message;
+    }
+
+    /**
+     Construire le message destiné au client pour un cours absent du catalogue.
+     @param session la session du formulaire
+     @param code le code du cours du formulaire
+     @return le message d'erreur
+     */
+    private static String unknownCourse(String session, String code) {
+        return "Erreur: cours inconnu: " + code + " n'est pas offert à la session " + session + ".";
+    }
+}
@@ -0,0 +1,270 @@
+package server;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Classe ServerLog qui représente le journal des événements du serveur, écrit de façon asynchrone.
+ * Les threads du serveur déposent leurs événements dans un tampon circulaire borné et un seul thread d'arrière-plan
+ * les met en forme et les écrit par lots : un thread de traitement n'attend jamais la console. Lorsque le tampon se
+ * remplit, les enregistrements de requêtes sont échantillonnés, puis, s'il est plein, les événements sont perdus
+ * plutôt que de bloquer le traitement; le nombre d'événements perdus est écrit dès que le tampon se vide.
+ * Chaque ligne est structurée en paires clé=valeur, par exemple :
+ * ts=2023-04-17T12:00:00Z level=INFO event=request cmd=INSCRIRE session=Automne course=IFT1015 latency_us=850 outcome=ok
+ * Le niveau minimal est lu dans la propriété système server.log.level (INFO par défaut).
+ */
+public final class ServerLog {
+
+    /**
+     * Niveaux des événements, du plus détaillé au plus grave.
+     */
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    /**
+     * Nombre maximal d'événements en attente d'écriture.
+     */
+    public final static int DEFAULT_CAPACITY = 8192;
+
+    /**
+     * Lorsque le tampon est rempli aux trois quarts, un seul enregistrement de requête sur SAMPLE_RATE est gardé.
+     */
+    public final static int SAMPLE_RATE = 10;
+
+    private static volatile ServerLog instance;
+
+    private final BlockingQueue<Event> queue;
+    private final int sampleThreshold;
+    private final PrintStream out;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong sampled = new AtomicLong();
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private volatile Level level;
+
+    /**
+     * Constructeur de la classe ServerLog.
+     * @param out Le flux où les événements sont écrits.
+     * @param capacity Le nombre maximal d'événements en attente d'écriture.
+     * @param level Le niveau minimal des événements écrits.
+     */
+    public ServerLog(PrintStream out, int capacity, Level level) {
+        this.out = out;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.sampleThreshold = capacity * 3 / 4;
+        this.level = level;
+        Thread writer = new Thread(this::writeLoop, "server-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Obtient le journal partagé par le serveur, qui écrit sur la sortie standard.
+     * @return Le journal du serveur.
+     */
+    public static ServerLog get() {
+        ServerLog log = instance;
+        if (log == null) {
+            synchronized (ServerLog.class) {
+                log = instance;
+                if (log == null) {
+                    log = new ServerLog(System.out, DEFAULT_CAPACITY, defaultLevel());
+                    instance = log;
+                }
+            }
+        }
+        return log;
+    }
+
+    private static Level defaultLevel() {
+        try {
+            return Level.valueOf(System.getProperty("server.log.level", "INFO").toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return Level.INFO;
+        }
+    }
+
+    /**
+     * Change le niveau minimal des événements écrits.
+     * @param level Le nouveau niveau minimal.
+     */
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+
+    /**
+     * Indique si les événements du niveau spécifié sont écrits.
+     * @param level Le niveau.
+     * @return true si les événements de ce niveau sont écrits.
+     */
+    public boolean isEnabled(Level level) {
+        return level.compareTo(this.level) >= 0;
+    }
+
+    /**
+     * Enregistre un événement de débogage.
+     * @param message Le message.
+     */
+    public void debug(String message) {
+        log(Level.DEBUG, message, null);
+    }
+
+    /**
+     * Enregistre un événement d'information.
+     * @param message Le message.
+     */
+    public void info(String message) {
+        log(Level.INFO, message, null);
+    }
+
+    /**
+     * Enregistre un avertissement.
+     * @param message Le message.
+     */
+    public void warn(String message) {
+        log(Level.WARN, message, null);
+    }
+
+    /**
+     * Enregistre une erreur et sa cause.
+     * @param message Le message.
+     * @param error L'exception à l'origine de l'erreur, dont la pile est écrite par le thread d'arrière-plan.
+     */
+    public void error(String message, Throwable error) {
+        log(Level.ERROR, message, error);
+    }
+
+    /**
+     * Enregistre le traitement d'une requête.
+     * Sous forte charge, ces enregistrements sont échantillonnés (voir SAMPLE_RATE).
+     * @param cmd La commande.
+     * @param session La session concernée, ou null.
+     * @param course Le code du cours concerné, ou null.
+     * @param latencyNanos La latence du traitement, en nanosecondes.
+     * @param outcome Le résultat : ok, doublon, complet, erreur...
+     */
+    public void request(String cmd, String session, String course, long latencyNanos, String outcome) {
+        if (!isEnabled(Level.INFO)) {
+            return;
+        }
+        if (queue.size() >= sampleThreshold && sampled.incrementAndGet() % SAMPLE_RATE != 0) {
+            return;
+        }
+        enqueue(new Event(Level.INFO, null, null, cmd, session, course, latencyNanos, outcome));
+    }
+
+    private void log(Level level, String message, Throwable error) {
+        if (isEnabled(level)) {
+            enqueue(new Event(level, message, error, null, null, null, 0, null));
+        }
+    }
+
+    private void enqueue(Event event) {
+        if (queue.offer(event)) {
+            enqueued.incrementAndGet();
+        } else {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Attend que les événements déjà enregistrés soient écrits, au plus pendant le délai spécifié.
+     * @param timeout Le délai maximal d'attente.
+     * @param unit L'unité du délai.
+     */
+    public void flush(long timeout, TimeUnit unit) {
+        long target = enqueued.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (written.get() < target && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void writeLoop() {
+        List<Event> batch = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                // Le thread d'écriture n'est jamais interrompu par le journal lui-même
+                return;
+            }
+            queue.drainTo(batch);
+            for (Event event : batch) {
+                event.format(text);
+            }
+            long lost = dropped.getAndSet(0);
+            if (lost > 0) {
+                new Event(Level.WARN, lost + " événements perdus, tampon du journal plein", null,
+                        null, null, null, 0, null).format(text);
+            }
+            out.print(text);
+            out.flush();
+            written.addAndGet(batch.size());
+            batch.clear();
+            text.setLength(0);
+        }
+    }
+
+    /**
+     * Événement en attente d'écriture. Sa mise en forme est faite par le thread d'arrière-plan.
+     */
+    private static final class Event {
+        private final long time = System.currentTimeMillis();
+        private final Level level;
+        private final String message;
+        private final Throwable error;
+        private final String cmd;
+        private final String session;
+        private final String course;
+        private final long latencyNanos;
+        private final String outcome;
+
+        private Event(Level level, String message, Throwable error, String cmd, String session, String course,
+                      long latencyNanos, String outcome) {
+            this.level = level;
+            this.message = message;
+            this.error = error;
+            this.cmd = cmd;
+            this.session = session;
+            this.course = course;
+            this.latencyNanos = latencyNanos;
+            this.outcome = outcome;
+        }
+
+        private void format(StringBuilder text) {
+            text.append("ts=").append(Instant.ofEpochMilli(time)).append(" level=").append(level);
+            if (cmd != null) {
+                text.append(" event=request cmd=").append(cmd)
+                        .append(" session=").append(session != null && !session.isEmpty() ? session : "-")
+                        .append(" course=").append(course != null ? course : "-")
+                        .append(" latency_us=").append(TimeUnit.NANOSECONDS.toMicros(latencyNanos))
+                        .append(" outcome=").append(outcome);
+            } else {
+                text.append(" msg=\"").append(message).append('"');
+            }
+            text.append(System.lineSeparator());
+            if (error != null) {
+                StringWriter trace = new StringWriter();
+                error.printStackTrace(new PrintWriter(trace));
+                text.append(trace);
+            }
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package server;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Classe ServerMetrics qui représente les mesures du serveur : requêtes, erreurs et latences par commande,
+ * connexions acceptées et ouvertes, octets reçus et envoyés, et latence d'écriture du fichier des inscriptions.
+ * Chaque mesure est un compteur atomique ou un LatencyHistogram : les enregistrer ne prend aucun verrou et
+ * n'alloue rien. Pour chaque commande, trois latences sont suivies : la requête complète (listen), l'appel des
+ * EventHandlers (alertHandlers) et le traitement lui-même (handleLoadCourses, handleRegistration, ...).
+ * Le retard des EventHandlers asynchrones (voir AsyncEventHandler) est suivi par handler, et les refus du contrôle
+ * d'admission (voir AdmissionControl) par raison, de même que la salle d'attente des inscriptions (voir WaitingRoom)
+ * et les rechargements du catalogue des cours (voir CourseCatalog).
+ * Les mesures sont exposées par JMX (voir ServerMetricsMXBean) et par la commande texte STATS.
+ */
+public class ServerMetrics implements ServerMetricsMXBean {
+
+    /**
+     * Nom sous lequel les mesures d'une commande inconnue sont regroupées, pour qu'un client ne puisse pas faire
+     * grossir les mesures sans limite.
+     */
+    public final static String OTHER_COMMAND = "AUTRE";
+
+    /**
+     * Nombre de secondes sur lesquelles le taux d'acceptation des connexions est calculé.
+     */
+    public final static int RATE_WINDOW = 10;
+
+    private final ConcurrentHashMap<String, CommandMetrics> commands = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AsyncEventHandler> asyncHandlers = new ConcurrentHashMap<>();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+    private final AtomicLongArray acceptsPerSecond = new AtomicLongArray(RATE_WINDOW);
+    private final AtomicLongArray acceptSeconds = new AtomicLongArray(RATE_WINDOW);
+    private final LatencyHistogram fileWrites;
+    private volatile AdmissionControl admission = AdmissionControl.unlimited();
+    private volatile WaitingRoom waitingRoom;
+    private volatile CourseCatalog catalog;
+    private ObjectName objectName;
+    private boolean unregistered;
+
+    /**
+     * Constructeur de la classe ServerMetrics.
+     * @param fileWrites L'histogramme des latences d'écriture du fichier des inscriptions (voir RegistrationLog).
+     * @param commands Les commandes connues du serveur, suivies chacune séparément.
+     */
+    public ServerMetrics(LatencyHistogram fileWrites, String... commands) {
+        this.fileWrites = fileWrites;
+        for (String command : commands) {
+            this.commands.put(command, new CommandMetrics());
+        }
+        this.commands.put(OTHER_COMMAND, new CommandMetrics());
+    }
+
+    /**
+     * Obtient les mesures d'une commande.
+     * @param command La commande reçue du client.
+     * @return Les mesures de la commande, ou celles de OTHER_COMMAND si elle est inconnue.
+     */
+    public CommandMetrics command(String command) {
+        CommandMetrics metrics = commands.get(command);
+        return metrics != null ? metrics : commands.get(OTHER_COMMAND);
+    }
+
+    /**
+     * Suit les mesures d'un EventHandler asynchrone.
+     * @param handler Le handler asynchrone, identifié par son nom.
+     */
+    public void addAsyncHandler(AsyncEventHandler handler) {
+        asyncHandlers.put(handler.getName(), handler);
+    }
+
+    /**
+     * Suit les mesures du contrôle d'admission du serveur.
+     * @param admission Le contrôle d'admission appliqué par le serveur.
+     */
+    public void setAdmissionControl(AdmissionControl admission) {
+        this.admission = admission;
+    }
+
+    /**
+     * Suit la salle d'attente des inscriptions du serveur.
+     * @param waitingRoom La salle d'attente, ou null si elle est fermée.
+     */
+    public void setWaitingRoom(WaitingRoom waitingRoom) {
+        this.waitingRoom = waitingRoom;
+    }
+
+    /**
+     * Suit les rechargements du catalogue des cours du serveur.
+     * @param catalog Le catalogue des cours.
+     */
+    public void setCourseCatalog(CourseCatalog catalog) {
+        this.catalog = catalog;
+    }
+
+    /**
+     * Compte une connexion acceptée par le serveur.
+     */
+    public void connectionAccepted() {
+        accepted.incrementAndGet();
+        long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        int slot = (int) (second % RATE_WINDOW);
+        long slotSecond = acceptSeconds.get(slot);
+        if (slotSecond != second && acceptSeconds.compareAndSet(slot, slotSecond, second)) {
+            // Première connexion de cette seconde : l'intervalle contenait une seconde plus ancienne
+            acceptsPerSecond.set(slot, 0);
+        }
+        acceptsPerSecond.incrementAndGet(slot);
+    }
+
+    /**
+     * Compte une connexion ouverte, dont le traitement commence.
+     */
+    public void connectionOpened() {
+        open.incrementAndGet();
+    }
+
+    /**
+     * Compte une connexion fermée.
+     */
+    public void connectionClosed() {
+        open.decrementAndGet();
+    }
+
+    /**
+     * Ajoute des octets reçus d'un client.
+     * @param n Le nombre d'octets reçus.
+     */
+    public void addBytesIn(long n) {
+        bytesIn.addAndGet(n);
+    }
+
+    /**
+     * Ajoute des octets envoyés à un client.
+     * @param n Le nombre d'octets envoyés.
+     */
+    public void addBytesOut(long n) {
+        bytesOut.addAndGet(n);
+    }
+
+    @Override
+    public long getAcceptedConnections() {
+        return accepted.get();
+    }
+
+    @Override
+    public double getAcceptRate() {
+        long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        long count = 0;
+        for (int slot = 0; slot < RATE_WINDOW; slot++) {
+            // La seconde courante n'est pas terminée : seules les RATE_WINDOW secondes précédentes sont comptées
+            long slotSecond = acceptSeconds.get(slot);
+            if (slotSecond < second && slotSecond >= second - RATE_WINDOW) {
+                count += acceptsPerSecond.get(slot);
+            }
+        }
+        return (double) count / RATE_WINDOW;
+    }
+
+    @Override
+    public int getOpenConnections() {
+        return open.get();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.get();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.get();
+    }
+
+    @Override
+    public Map<String, Long> getRequestCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        commands.forEach((command, metrics) -> counts.put(command, metrics.requests.count()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> errors = new TreeMap<>();
+        commands.forEach((command, metrics) -> errors.put(command, metrics.errors.get()));
+        return errors;
+    }
+
+    @Override
+    public Map<String, Double> getRequestLatencyP99() {
+        Map<String, Double> latencies = new TreeMap<>();
+        commands.forEach((command, metrics) -> latencies.put(command, metrics.requests.percentile(99) / 1e6));
+        return latencies;
+    }
+
+    @Override
+    public double getFileWriteLatencyP99() {
+        return fileWrites.percentile(99) / 1e6;
+    }
+
+    @Override
+    public Map<String, Double> getHandlerLagP99() {
+        Map<String, Double> lags = new TreeMap<>();
+        asyncHandlers.forEach((name, handler) -> lags.put(name, handler.getLag().percentile(99) / 1e6));
+        return lags;
+    }
+
+    @Override
+    public Map<String, Long> getHandlerDropped() {
+        Map<String, Long> dropped = new TreeMap<>();
+        asyncHandlers.forEach((name, handler) -> dropped.put(name, handler.getDropped()));
+        return dropped;
+    }
+
+    @Override
+    public int getInFlightRequests() {
+        return admission.getInFlight();
+    }
+
+    @Override
+    public Map<String, Long> getRejectedRequests() {
+        return admission.getRejected();
+    }
+
+    @Override
+    public int getWaitingRegistrations() {
+        WaitingRoom room = waitingRoom;
+        return room != null ? room.getWaiting() : 0;
+    }
+
+    @Override
+    public int getCatalogCourses() {
+        CourseCatalog c = catalog;
+        return c != null ? c.getSnapshot().getCourseCount() : 0;
+    }
+
+    @Override
+    public double getCatalogReloadTime() {
+        CourseCatalog c = catalog;
+        return c != null ? c.getLastReloadDuration() / 1e6 : 0;
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "connexions: acceptées=%d ouvertes=%d taux=%.1f/s%n",
+                getAcceptedConnections(), getOpenConnections(), getAcceptRate()));
+        out.append(String.format(Locale.ROOT, "octets: reçus=%d envoyés=%d%n", getBytesIn(), getBytesOut()));
+        out.append("écriture des inscriptions: ").append(fileWrites).append(System.lineSeparator());
+        out.append("admission: ").append(admission).append(System.lineSeparator());
+        WaitingRoom room = waitingRoom;
+        if (room != null) {
+            out.append("salle d'attente: ").append(room).append(System.lineSeparator());
+        }
+        CourseCatalog c = catalog;
+        if (c != null) {
+            out.append("catalogue: ").append(c).append(System.lineSeparator());
+        }
+        for (Map.Entry<String, CommandMetrics> entry : new TreeMap<>(commands).entrySet()) {
+            CommandMetrics metrics = entry.getValue();
+            if (metrics.requests.count() == 0) {
+                continue;
+            }
+            out.append(entry.getKey()).append(": erreurs=").append(metrics.errors.get())
+                    .append(System.lineSeparator());
+            out.append("  requête: ").append(metrics.requests).append(System.lineSeparator());
+            out.append("  handlers: ").append(metrics.handlers).append(System.lineSeparator());
+            out.append("  traitement: ").append(metrics.processing).append(System.lineSeparator());
+        }
+        for (AsyncEventHandler handler : new TreeMap<>(asyncHandlers).values()) {
+            out.append("handler ").append(handler.getName()).append(": ").append(handler)
+                    .append(System.lineSeparator());
+        }
+        return out.toString();
+    }
+
+    /**
+     * Enregistre les mesures auprès du serveur JMX de la plateforme.
+     * @param port Le port du serveur, qui distingue les serveurs d'une même JVM.
+     */
+    public synchronized void register(int port) {
+        if (unregistered) {
+            // Le serveur a été arrêté avant la fin de son démarrage
+            return;
+        }
+        try {
+            MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("server:type=ServerMetrics,port=" + port);
+            mbeans.registerMBean(this, name);
+            objectName = name;
+        } catch (JMException e) {
+            ServerLog.get().warn("Mesures non exposées par JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Enregistre les mesures auprès du serveur JMX de la plateforme dans un thread d'arrière-plan.
+     * La création du serveur JMX de la plateforme charge plusieurs centaines de classes : le serveur peut ainsi
+     * accepter ses premières connexions sans l'attendre.
+     * @param port Le port du serveur, qui distingue les serveurs d'une même JVM.
+     */
+    public void registerInBackground(int port) {
+        Thread t = new Thread(() -> register(port), "server-jmx");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    /**
+     * Retire les mesures du serveur JMX de la plateforme. Un enregistrement encore à venir n'aura pas lieu.
+     */
+    public synchronized void unregister() {
+        unregistered = true;
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            // Les mesures ont déjà été retirées
+        }
+        objectName = null;
+    }
+
+    /**
+     * Mesures d'une commande.
+     */
+    public static final class CommandMetrics {
+        private final LatencyHistogram requests = new LatencyHistogram();
+        private final LatencyHistogram handlers = new LatencyHistogram();
+        private final LatencyHistogram processing = new LatencyHistogram();
+        private final AtomicLong errors = new AtomicLong();
+
+        /**
+         * Enregistre la latence d'une requête complète, de la lecture de la commande à la fin de son traitement.
+         * @param nanos La latence, en nanosecondes.
+         */
+        public void recordRequest(long nanos) {
+            requests.record(nanos);
+        }
+
+        /**
+         * Enregistre la latence de l'appel de tous les EventHandlers pour une requête.
+         * @param nanos La latence, en nanosecondes.
+         */
+        public void recordHandlers(long nanos) {
+            handlers.record(nanos);
+        }
+
+        /**
+         * Enregistre la latence du traitement de la commande par le serveur.
+         * @param nanos La latence, en nanosecondes.
+         */
+        public void recordProcessing(long nanos) {
+            processing.record(nanos);
+        }
+
+        /**
+         * Compte une requête en erreur.
+         */
+        public void error() {
+            errors.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package server;
+
+import java.util.Map;
+
+/**
+ * Interface ServerMetricsMXBean qui décrit les mesures du serveur exposées par JMX (voir ServerMetrics).
+ * Les latences sont données en millisecondes et les mesures sont cumulées depuis le démarrage du serveur.
+ */
+public interface ServerMetricsMXBean {
+
+    /**
+     * Obtient le nombre de connexions acceptées.
+     * @return Le nombre de connexions acceptées.
+     */
+    long getAcceptedConnections();
+
+    /**
+     * Obtient le nombre moyen de connexions acceptées par seconde pendant les dernières secondes.
+     * @return Le taux d'acceptation, en connexions par seconde.
+     */
+    double getAcceptRate();
+
+    /**
+     * Obtient le nombre de connexions ouvertes.
+     * @return Le nombre de connexions ouvertes.
+     */
+    int getOpenConnections();
+
+    /**
+     * Obtient le nombre d'octets reçus des clients.
+     * @return Le nombre d'octets reçus.
+     */
+    long getBytesIn();
+
+    /**
+     * Obtient le nombre d'octets envoyés aux clients.
+     * @return Le nombre d'octets envoyés.
+     */
+    long getBytesOut();
+
+    /**
+     * Obtient le nombre de requêtes traitées, par commande.
+     * @return Le nombre de requêtes de chaque commande.
+     */
+    Map<String, Long> getRequestCounts();
+
+    /**
+     * Obtient le nombre de requêtes en erreur, par commande.
+     * @return Le nombre d'erreurs de chaque commande.
+     */
+    Map<String, Long> getErrorCounts();
+
+    /**
+     * Obtient le 99e percentile de la latence des requêtes, par commande.
+     * @return La latence p99 de chaque commande, en millisecondes.
+     */
+    Map<String, Double> getRequestLatencyP99();
+
+    /**
+     * Obtient le 99e percentile de la latence d'écriture du fichier des inscriptions.
+     * @return La latence p99 d'écriture, en millisecondes.
+     */
+    double getFileWriteLatencyP99();
+
+    /**
+     * Obtient le 99e percentile du retard des EventHandlers asynchrones, entre le dépôt d'un événement et le début
+     * de son traitement, par handler.
+     * @return Le retard p99 de chaque handler asynchrone, en millisecondes.
+     */
+    Map<String, Double> getHandlerLagP99();
+
+    /**
+     * Obtient le nombre d'événements perdus par les EventHandlers asynchrones dont la file était pleine, par handler.
+     * @return Le nombre d'événements perdus de chaque handler asynchrone.
+     */
+    Map<String, Long> getHandlerDropped();
+
+    /**
+     * Obtient le nombre de requêtes en cours de traitement, suivi par le contrôle d'admission.
+     * @return Le nombre de requêtes en cours.
+     */
+    int getInFlightRequests();
+
+    /**
+     * Obtient le nombre de connexions et de requêtes refusées par le contrôle d'admission, par raison du refus.
+     * @return Le nombre de refus par raison : connexion, adresse, matricule et charge.
+     */
+    Map<String, Long> getRejectedRequests();
+
+    /**
+     * Obtient le nombre de demandes d'inscription qui attendent leur tour dans la salle d'attente.
+     * @return Le nombre de demandes en attente, 0 si la salle d'attente est fermée.
+     */
+    int getWaitingRegistrations();
+
+    /**
+     * Obtient le nombre de cours du catalogue courant, toutes sessions confondues.
+     * @return Le nombre de cours.
+     */
+    int getCatalogCourses();
+
+    /**
+     * Obtient la durée du dernier rechargement réussi du catalogue des cours, en millisecondes.
+     * @return La durée du rechargement.
+     */
+    double getCatalogReloadTime();
+
+    /**
+     * Produit le rapport texte complet des mesures, le même que celui de la commande STATS.
+     * @return Le rapport des mesures.
+     */
+    String dump();
+}
@@ -0,0 +1,217 @@
+package client;
+
+import server.AdmissionControl;
+import server.BinaryProtocol;
+import server.CourseCatalog;
+import server.RegistrationLog;
+import server.Server;
+import server.models.Course;
+import server.models.RegistrationForm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * La classe StartupBenchmark mesure le temps de démarrage à froid du serveur, avec et sans archive AppCDS.
+ * Chaque essai lance une nouvelle JVM qui démarre un Server, lui envoie une première série de requêtes (CHARGER,
+ * CHARGER_FLUX, CHERCHER et INSCRIRE) et s'arrête : le temps mesuré va du lancement de la JVM à la dernière réponse.
+ * Si l'archive n'existe pas encore, elle est d'abord créée par un essai d'entraînement lancé avec
+ * -XX:ArchiveClassesAtExit : les classes chargées pendant cet essai sont gardées dans l'archive, déjà analysées et
+ * vérifiées, et les JVM lancées ensuite avec -XX:SharedArchiveFile n'ont plus qu'à les projeter en mémoire.
+ * Le serveur n'a pas besoin de JavaFX : seules les classes du serveur sont dans le chemin de classes de l'essai.
+ * AppCDS n'archive que des classes lues dans des fichiers jar : le chemin de classes ne doit pas contenir de
+ * répertoire, et l'archive doit être recréée (en la supprimant) après chaque reconstruction des jar.
+ * Le fichier des cours est transmis aux essais par la propriété CourseCatalog.FILE_PROPERTY : par défaut, celui du
+ * projet, lu à partir du répertoire courant.
+ * Options (toutes facultatives) :
+ * --runs=10 --archive=server.jsa --classpath=(celui de la JVM courante) --courses=(CourseCatalog.COURSES_FILE)
+ */
+public class StartupBenchmark {
+
+    /**
+     * Option qui lance un seul essai dans la JVM courante, utilisée par les JVM lancées par le banc d'essai.
+     */
+    public final static String PROBE_OPTION = "--probe";
+
+    private final int runs;
+    private final Path archive;
+    private final String classpath;
+    private final Path courses;
+
+    /**
+     * Constructeur de la classe StartupBenchmark.
+     * @param options Les options du banc d'essai, par nom (voir la description de la classe).
+     */
+    public StartupBenchmark(Map<String, String> options) {
+        this.runs = Integer.parseInt(options.getOrDefault("runs", "10"));
+        this.archive = Paths.get(options.getOrDefault("archive", "server.jsa"));
+        this.classpath = options.getOrDefault("classpath", System.getProperty("java.class.path"));
+        this.courses = Paths.get(options.getOrDefault("courses", CourseCatalog.COURSES_FILE)).toAbsolutePath();
+    }
+
+    /**
+     * Méthode principale pour lancer le banc d'essai, ou un seul essai avec l'option PROBE_OPTION.
+     * @param args Les options, sous la forme --nom=valeur.
+     * @throws Exception Si une exception survient lors de l'exécution des essais.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1 && args[0].equals(PROBE_OPTION)) {
+            probe();
+            return;
+        }
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                System.out.println("Option invalide: " + arg);
+                return;
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        new StartupBenchmark(options).run();
+    }
+
+    /**
+     * Crée l'archive au besoin, puis lance les essais avec et sans l'archive, en alternance, et affiche les
+     * résultats.
+     * @throws IOException En cas d'erreur lors du lancement d'une JVM.
+     * @throws InterruptedException Si le thread est interrompu pendant l'attente d'une JVM.
+     */
+    public void run() throws IOException, InterruptedException {
+        for (String entry : classpath.split(File.pathSeparator)) {
+            if (Files.isDirectory(Paths.get(entry))) {
+                System.out.println("Le chemin de classes doit contenir seulement des fichiers jar: " + entry);
+                return;
+            }
+        }
+        if (!Files.isRegularFile(courses)) {
+            System.out.println("Fichier des cours introuvable: " + courses
+                    + " (lancez le banc d'essai à la racine du projet, ou indiquez --courses=)");
+            return;
+        }
+        if (!Files.exists(archive)) {
+            System.out.println("Création de l'archive " + archive + " par un essai d'entraînement...");
+            launch("-XX:ArchiveClassesAtExit=" + archive);
+        }
+        long[] without = new long[runs];
+        long[] with = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            without[i] = launch(null);
+            with[i] = launch("-XX:SharedArchiveFile=" + archive);
+        }
+        System.out.println("*** Démarrage à froid du serveur, " + runs + " essais ***");
+        System.out.println(String.format(Locale.ROOT, "%-12s %10s %10s %10s", "archive", "min ms", "médiane ms", "max ms"));
+        report("sans", without);
+        report("avec", with);
+    }
+
+    /**
+     * Lance un essai dans une nouvelle JVM et attend sa fin.
+     * @param option L'option de la JVM qui crée ou utilise l'archive, ou null pour un essai sans archive.
+     * @return Le temps entre le lancement de la JVM et la fin de l'essai, en nanosecondes.
+     */
+    private long launch(String option) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        if (option != null) {
+            command.add(option);
+        }
+        command.addAll(Arrays.asList("-Dserver.log.level=WARN", "-D" + CourseCatalog.FILE_PROPERTY + "=" + courses,
+                "-cp", classpath,
+                StartupBenchmark.class.getName(), PROBE_OPTION));
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line).append(System.lineSeparator());
+            }
+        }
+        if (process.waitFor() != 0) {
+            throw new IOException("L'essai a échoué:" + System.lineSeparator() + output);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String name, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.println(String.format(Locale.ROOT, "%-12s %10.1f %10.1f %10.1f", name,
+                sorted[0] / 1e6, sorted[sorted.length / 2] / 1e6, sorted[sorted.length - 1] / 1e6));
+    }
+
+    /**
+     * Essai de démarrage : démarre un serveur sur un port libre avec un journal des inscriptions temporaire,
+     * envoie une première requête de chaque sorte et arrête le serveur.
+     * L'essai échoue si le fichier des cours est introuvable ou sans cours à la session Automne, plutôt que de mesurer
+     * un serveur sans cours, et si l'inscription d'essai est refusée.
+     */
+    private static void probe() throws Exception {
+        Path courses = CourseCatalog.coursesFile();
+        if (!Files.isRegularFile(courses)) {
+            throw new IOException("Fichier des cours introuvable: " + courses.toAbsolutePath());
+        }
+        Path registrations = Files.createTempFile("inscription", ".txt");
+        int port;
+        try (ServerSocket free = new ServerSocket(0)) {
+            port = free.getLocalPort();
+        }
+        Server server = new Server(port, Server.DEFAULT_BACKLOG, 2, false, new RegistrationLog(registrations));
+        server.setAdmissionControl(AdmissionControl.unlimited());
+        Thread serverThread = new Thread(server::run, "server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        try (Socket socket = new Socket("localhost", port)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            BinaryProtocol.writeHandshake(out);
+            BinaryProtocol.readHandshake(in);
+            out.write(BinaryProtocol.encodeCommand(1, Server.LOAD_COMMAND + " Automne"));
+            out.write(BinaryProtocol.encodeCommand(2, Server.STREAM_LOAD_COMMAND + " Automne"));
+            out.write(BinaryProtocol.encodeCommand(3, Server.SEARCH_COMMAND + " Automne 0 IFT"));
+            out.flush();
+            // L'inscription porte sur un cours du catalogue, pour passer par la réservation et l'écriture du journal
+            ArrayList<Course> loaded = BinaryProtocol.readCourseList(BinaryProtocol.readFrame(in), in);
+            if (loaded.isEmpty()) {
+                throw new IOException("Aucun cours à la session Automne dans " + courses.toAbsolutePath());
+            }
+            Course course = loaded.get(0);
+            out.write(BinaryProtocol.encodeCommand(4, Server.REGISTER_COMMAND));
+            out.write(BinaryProtocol.encodeForm(4, new RegistrationForm("Essai", "Demarrage",
+                    "essai@umontreal.ca", "000000", new Course(course.getName(), course.getCode(), "Automne"))));
+            out.flush();
+            BinaryProtocol.Frame page;
+            do {
+                page = BinaryProtocol.readFrame(in);
+            } while (page.getCoursePage().hasNext());
+            BinaryProtocol.readFrame(in).getCoursePage();
+            String registered = BinaryProtocol.readFrame(in).getMessage();
+            if (registered.startsWith("Erreur")) {
+                throw new IOException("L'inscription d'essai a échoué: " + registered);
+            }
+        } finally {
+            server.shutdown(1, TimeUnit.SECONDS);
+            Files.deleteIfExists(registrations);
+        }
+    }
+}
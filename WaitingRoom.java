@@ -0,0 +1,161 @@
+package server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Classe WaitingRoom qui représente la salle d'attente des inscriptions, ouverte par exemple à l'ouverture de la
+ * période d'inscription (voir Server.setWaitingRoom()).
+ * Chaque demande d'inscription reçoit à son arrivée un ticket qui fixe l'instant de son tour. Les tours se
+ * suivent à intervalle régulier, dans l'ordre d'arrivée : la file est premier arrivé, premier servi, et les
+ * inscriptions commencent au débit configuré, quel que soit le nombre de clients qui arrivent en même temps.
+ * La file est bornée : une demande dont le tour serait plus loin que la capacité de la salle est refusée.
+ * Prendre un ticket ne prend aucun verrou : le prochain tour libre est un seul AtomicLong mis à jour par
+ * compareAndSet, comme les seaux à jetons d'AdmissionControl.
+ * Un client qui attend n'occupe aucun thread du serveur : sa requête est reportée et son tour est vérifié toutes
+ * les UPDATE_INTERVAL millisecondes (voir Server.awaitTurn()).
+ */
+public final class WaitingRoom {
+
+    /**
+     * Nombre d'inscriptions par seconde par défaut.
+     */
+    public final static double DEFAULT_THROUGHPUT = 50;
+
+    /**
+     * Nombre maximal de demandes en attente par défaut.
+     */
+    public final static int DEFAULT_CAPACITY = 5000;
+
+    /**
+     * Délai, en millisecondes, entre deux envois de la position d'un client dans la file. Chaque position reçue
+     * relance le délai de lecture du client, ce délai doit donc rester plus court (voir NetworkService.REQUEST_TIMEOUT).
+     */
+    public final static int UPDATE_INTERVAL = 1000;
+
+    /**
+     * Message envoyé au client lorsque la salle d'attente est pleine.
+     */
+    public final static String FULL_MESSAGE = "Erreur: la file d'attente des inscriptions est pleine, réessayez plus tard.";
+
+    private final long interval;
+    private final int capacity;
+    private final AtomicLong nextTurn = new AtomicLong(System.nanoTime());
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong refused = new AtomicLong();
+
+    /**
+     * Constructeur de la classe WaitingRoom, avec le débit et la capacité par défaut.
+     */
+    public WaitingRoom() {
+        this(DEFAULT_THROUGHPUT, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructeur de la classe WaitingRoom.
+     * @param throughput Le nombre d'inscriptions commencées par seconde.
+     * @param capacity Le nombre maximal de demandes en attente.
+     */
+    public WaitingRoom(double throughput, int capacity) {
+        if (throughput <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Débit et capacité de la salle d'attente doivent être positifs");
+        }
+        this.interval = (long) (TimeUnit.SECONDS.toNanos(1) / throughput);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Fait entrer une demande dans la file et lui attribue le prochain tour libre.
+     * @return Le ticket de la demande, ou null si la salle est pleine.
+     */
+    public Ticket enter() {
+        long now = System.nanoTime();
+        while (true) {
+            long current = nextTurn.get();
+            long turn = current - now > 0 ? current : now;
+            if (turn - now >= interval * capacity) {
+                refused.incrementAndGet();
+                return null;
+            }
+            if (nextTurn.compareAndSet(current, turn + interval)) {
+                waiting.incrementAndGet();
+                return new Ticket(turn);
+            }
+        }
+    }
+
+    /**
+     * Obtient le délai conseillé à un client refusé parce que la salle est pleine : le temps de servir la moitié
+     * de la file.
+     * @return Le délai, en millisecondes.
+     */
+    public int getRetryAfter() {
+        return (int) Math.min(Integer.MAX_VALUE, TimeUnit.NANOSECONDS.toMillis(interval * capacity / 2));
+    }
+
+    /**
+     * Obtient le nombre de demandes en attente de leur tour.
+     * @return Le nombre de demandes en attente.
+     */
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    /**
+     * Obtient le nombre de demandes refusées parce que la salle était pleine.
+     * @return Le nombre de demandes refusées.
+     */
+    public long getRefused() {
+        return refused.get();
+    }
+
+    /**
+     * Résume l'état de la salle d'attente sur une ligne.
+     * @return Le résumé de l'état.
+     */
+    @Override
+    public String toString() {
+        return "en_attente=" + getWaiting() + " refusées=" + getRefused();
+    }
+
+    /**
+     * Classe Ticket qui représente la place d'une demande dans la file : l'instant de son tour.
+     */
+    public final class Ticket {
+        private final long turn;
+        private boolean left;
+
+        private Ticket(long turn) {
+            this.turn = turn;
+        }
+
+        /**
+         * Obtient la position de la demande dans la file, 0 si son tour est arrivé.
+         * @return Le nombre de demandes servies avant elle.
+         */
+        public int getPosition() {
+            long remaining = turn - System.nanoTime();
+            return remaining <= 0 ? 0 : (int) ((remaining + interval - 1) / interval);
+        }
+
+        /**
+         * Obtient le temps d'attente estimé avant le tour de la demande.
+         * @return Le temps d'attente, en millisecondes.
+         */
+        public int getEstimatedWait() {
+            return (int) Math.max(0, TimeUnit.NANOSECONDS.toMillis(turn - System.nanoTime()));
+        }
+
+        /**
+         * Sort de la file, lorsque le tour de la demande est arrivé ou que le client a abandonné. Le tour d'une
+         * demande abandonnée n'est pas réattribué : le débit de la salle n'est jamais dépassé.
+         */
+        public void leave() {
+            if (!left) {
+                left = true;
+                waiting.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import server.models.Course;
+import server.models.RegistrationForm;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classe ServerBenchmark qui regroupe les mesures JMH des chemins critiques du serveur :
+ * décodage des lignes de commande (Command), lecture du fichier des cours à 100, 10 000 et 1 000 000
+ * lignes, et encodage des réponses, avec la sérialisation Java d'origine comme avec le protocole binaire et le
+ * cache de ResponseCache.
+ * Le projet n'a pas de fichier de build : la classe se compile à la main, depuis la racine du dépôt, avec les
+ * classes du serveur (dont server.models) déjà compilées dans classes/ et les jars de JMH 1.37 dans lib/ :
+ * jmh-core, jmh-generator-annprocess, dont le processeur d'annotations génère les classes de mesure et la liste
+ * META-INF/BenchmarkList, ainsi que jopt-simple 5.0.4 et commons-math3 3.6.1, les dépendances de jmh-core :
+ * javac -encoding UTF-8 -d jmh-classes -cp classes:lib/jmh-core-1.37.jar:lib/jmh-generator-annprocess-1.37.jar \
+ *     -processor org.openjdk.jmh.generators.BenchmarkProcessor jmh/ServerBenchmark.java
+ * Les mesures se lancent ensuite avec main(), qui active toujours le profileur d'allocations de JMH :
+ * java -cp jmh-classes:classes:lib/jmh-core-1.37.jar:lib/jopt-simple-5.0.4.jar:lib/commons-math3-3.6.1.jar \
+ *     server.ServerBenchmark
+ * ou avec le lanceur de JMH, qui accepte ses options habituelles, avec le même chemin de classes :
+ * java -cp (le même) org.openjdk.jmh.Main ServerBenchmark -prof gc
+ * Les paramètres de préchauffage, de mesure et de fork sont fixés ici pour que les résultats soient comparables
+ * d'une modification à l'autre.
+ * Le décodage des commandes ne doit rien allouer : gc.alloc.rate.norm doit rester à 0 B/op pour
+ * decodeCommandNoArgument et decodeCommandWithArgument. Seul commandLineWithArgument, qui produit aussi la
+ * chaîne de l'argument passée aux EventHandlers, alloue cette chaîne.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ServerBenchmark {
+
+    /**
+     * Lance toutes les mesures de cette classe avec le profileur d'allocations.
+     * @param args Les arguments en ligne de commande, ignorés.
+     * @throws RunnerException En cas d'erreur lors de l'exécution des mesures.
+     */
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ServerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+    /**
+     * Lignes de commande typiques. Les champs ne sont pas final, pour que JMH ne puisse pas les traiter comme des
+     * constantes.
+     */
+    @State(Scope.Benchmark)
+    public static class CommandState {
+
+        /**
+         * Ligne de commande sans argument.
+         */
+        public String registerLine = Server.REGISTER_COMMAND;
+
+        /**
+         * Ligne de commande avec un argument.
+         */
+        public String loadLine = Server.LOAD_COMMAND + " Automne";
+    }
+
+    /**
+     * Fichier des cours généré avec le nombre de lignes demandé.
+     */
+    @State(Scope.Benchmark)
+    public static class CoursesFileState {
+        @Param({"100", "10000", "1000000"})
+        public int lines;
+
+        private Path file;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            file = Files.createTempFile("cours", ".txt");
+            writeCourses(file, lines);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Réponses et formulaires typiques à encoder et à décoder.
+     */
+    @State(Scope.Benchmark)
+    public static class EncodingState {
+        @Param({"10", "100"})
+        public int courses;
+
+        private ArrayList<Course> courseList;
+        private RegistrationForm form;
+        private byte[] coursesFrame;
+        private byte[] formFrame;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            courseList = new ArrayList<>(courses);
+            for (int i = 0; i < courses; i++) {
+                courseList.add(new Course("Programmation " + i, "IFT" + (1000 + i), "Automne"));
+            }
+            form = new RegistrationForm("Marie", "Tremblay", "marie.tremblay@umontreal.ca", "123456",
+                    courseList.get(0));
+            coursesFrame = BinaryProtocol.encodeCourses(1, courseList);
+            formFrame = BinaryProtocol.encodeForm(1, form);
+        }
+    }
+
+    /**
+     * Décodage d'une ligne de commande sans argument : la commande et la position de l'argument.
+     */
+    @Benchmark
+    public void decodeCommandNoArgument(CommandState state, Blackhole blackhole) {
+        blackhole.consume(Command.decode(state.registerLine));
+        blackhole.consume(Command.argumentStart(state.registerLine));
+    }
+
+    /**
+     * Décodage d'une ligne de commande avec un argument : la commande et la position de l'argument.
+     */
+    @Benchmark
+    public void decodeCommandWithArgument(CommandState state, Blackhole blackhole) {
+        blackhole.consume(Command.decode(state.loadLine));
+        blackhole.consume(Command.argumentStart(state.loadLine));
+    }
+
+    /**
+     * Décodage d'une ligne de commande avec un argument, comme dans Server.listen() : le nom de la commande et
+     * l'argument sous forme de chaînes, pour les EventHandlers.
+     */
+    @Benchmark
+    public void commandLineWithArgument(CommandState state, Blackhole blackhole) {
+        String line = state.loadLine;
+        blackhole.consume(Command.decode(line).commandName(line));
+        blackhole.consume(Command.argument(line));
+    }
+
+    /**
+     * Lecture et indexation du fichier des cours, comme au démarrage du serveur ou à chaque modification.
+     */
+    @Benchmark
+    public CourseCatalog.Snapshot loadCatalog(CoursesFileState state) {
+        return new CourseCatalog(state.file, Long.MAX_VALUE).getSnapshot();
+    }
+
+    /**
+     * Lecture du fichier des cours ligne par ligne, comme le faisait handleLoadCourses() à chaque requête avant le
+     * catalogue en mémoire.
+     */
+    @Benchmark
+    public ArrayList<Course> parseCoursesPerRequest(CoursesFileState state) throws IOException {
+        ArrayList<Course> courses = new ArrayList<>();
+        for (String line : Files.readAllLines(state.file, StandardCharsets.UTF_8)) {
+            String[] parts = line.split("\t");
+            if (parts[2].equals("Automne")) {
+                courses.add(new Course(parts[1], parts[0], parts[2]));
+            }
+        }
+        return courses;
+    }
+
+    /**
+     * Sérialisation Java d'une liste de cours dans un nouveau flux, comme par requête avant le cache.
+     */
+    @Benchmark
+    public byte[] serializeCourses(EncodingState state) throws IOException {
+        return writeObject(state.courseList);
+    }
+
+    /**
+     * Sérialisation Java d'une liste de cours sans l'en-tête du flux, telle que gardée par ResponseCache.
+     */
+    @Benchmark
+    public byte[] serializeCoursesForCache(EncodingState state) {
+        return ResponseCache.serialize(state.courseList);
+    }
+
+    /**
+     * Encodage binaire d'une liste de cours.
+     */
+    @Benchmark
+    public byte[] encodeCoursesBinary(EncodingState state) {
+        return BinaryProtocol.encodeCourses(1, state.courseList);
+    }
+
+    /**
+     * Décodage binaire d'une liste de cours.
+     */
+    @Benchmark
+    public ArrayList<Course> decodeCoursesBinary(EncodingState state) throws IOException {
+        return BinaryProtocol.readCourses(new DataInputStream(new ByteArrayInputStream(state.coursesFrame)));
+    }
+
+    /**
+     * Sérialisation Java d'un formulaire d'inscription.
+     */
+    @Benchmark
+    public byte[] serializeForm(EncodingState state) throws IOException {
+        return writeObject(state.form);
+    }
+
+    /**
+     * Encodage binaire d'un formulaire d'inscription.
+     */
+    @Benchmark
+    public byte[] encodeFormBinary(EncodingState state) {
+        return BinaryProtocol.encodeForm(1, state.form);
+    }
+
+    /**
+     * Décodage binaire d'un formulaire d'inscription.
+     */
+    @Benchmark
+    public RegistrationForm decodeFormBinary(EncodingState state) throws IOException {
+        return BinaryProtocol.readForm(new DataInputStream(new ByteArrayInputStream(state.formFrame)));
+    }
+
+    private static byte[] writeObject(Object object) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Écrit un fichier des cours réparti sur les trois sessions.
+     */
+    private static void writeCourses(Path file, int lines) throws IOException {
+        String[] sessions = {"Automne", "Hiver", "Ete"};
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < lines; i++) {
+                writer.write("IFT" + i + "\tCours " + i + "\t" + sessions[i % sessions.length]);
+                writer.newLine();
+            }
+        }
+    }
+}